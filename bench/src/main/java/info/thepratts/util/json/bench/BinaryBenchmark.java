@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json.bench;
+
+import info.thepratts.util.json.JSON;
+import info.thepratts.util.json.JSONBinary;
+import info.thepratts.util.json.JSONObject;
+import info.thepratts.util.json.JSONStore;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JSONBinary} against {@link JSON#from} over the same documents, and
+ * looking up one value without decoding the rest, from bytes and from a
+ * {@link JSONStore}.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BinaryBenchmark {
+
+    @Param({"sample", "test-01", "large", "numbers", "strings"})
+    public String doc;
+
+    private byte[] utf8;
+    private Object tree;
+    private byte[] binary;
+    private ByteBuffer buffer;
+    private JSONStore store;
+    private long handle;
+
+    @Setup
+    public void setup() throws IOException {
+        utf8 = Documents.get(doc).getBytes(StandardCharsets.UTF_8);
+        tree = JSON.from(utf8);
+        binary = JSONBinary.encode(tree);
+        buffer = ByteBuffer.wrap(binary);
+        store = new JSONStore();
+        handle = store.add(tree);
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public Object parseText() throws IOException {
+        return JSON.from(utf8);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return JSONBinary.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return JSONBinary.encode(tree);
+    }
+
+    @Benchmark
+    public Object get() throws IOException {
+        // A hit in the large document; elsewhere a miss, found after the
+        // first step.
+        return JSONBinary.get(buffer, 1000, "address", "zip");
+    }
+
+    @Benchmark
+    public Object storeGet() {
+        Object doc = store.get(handle);
+        if (doc instanceof JSONObject o) {
+            return o.get("id");
+        }
+        return ((List<?>) doc).get(((List<?>) doc).size() - 1);
+    }
+}
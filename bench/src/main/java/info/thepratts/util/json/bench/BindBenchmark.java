@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json.bench;
+
+import info.thepratts.util.json.JSON;
+import info.thepratts.util.json.JSONObject;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One record of the "large" document bound straight to a Java record, against
+ * parsing it to a JSONObject and copying the fields out.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BindBenchmark {
+
+    public record Address(String street, int zip) {
+    }
+
+    public record User(long id, String name, String email, boolean active, double score,
+            Object manager, List<String> tags, Address address) {
+    }
+
+    private String text;
+    private User user;
+
+    @Setup
+    public void setup() throws IOException {
+        text = Documents.ndjson(1).trim();
+        user = JSON.from(text, User.class);
+    }
+
+    @Benchmark
+    public User bind() throws IOException {
+        return JSON.from(text, User.class);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public User treeThenCopy() throws IOException {
+        JSONObject o = JSON.from(text);
+        JSONObject a = (JSONObject) o.get("address");
+        return new User((Long) o.get("id"), (String) o.get("name"), (String) o.get("email"),
+                (Boolean) o.get("active"), ((Number) o.get("score")).doubleValue(), o.get("manager"),
+                (List<String>) o.get("tags"), new Address((String) a.get("street"), ((Long) a.get("zip")).intValue()));
+    }
+
+    @Benchmark
+    public String write() {
+        return JSON.toJSON(user);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The documents benchmarks run over, by name: the files of the
+ * <code>samples</code> directory ("sample", "test-01" ... "test-05") and
+ * generated ones of about a megabyte each:
+ * <ul>
+ * <li>"large": an array of flat records mixing every kind of value</li>
+ * <li>"deep": objects and arrays nested over a hundred levels</li>
+ * <li>"numbers": rows of integers, decimals and exponents</li>
+ * <li>"strings": long strings with escapes and non-ASCII text</li>
+ * </ul>
+ * The samples directory is taken from the <code>samples.dir</code> system
+ * property, else looked for as <code>samples</code> or
+ * <code>../samples</code>. Generated documents are the same on every run.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class Documents {
+
+    private static final int TARGET_SIZE = 1 << 20;
+    private static final int DEPTH = 128;
+
+    private Documents() {
+    }
+
+    static String get(final String name) {
+        switch (name) {
+            case "large":
+                return large();
+            case "deep":
+                return deep();
+            case "numbers":
+                return numbers();
+            case "strings":
+                return strings();
+            default:
+                return sample(name);
+        }
+    }
+
+    /**
+     * @param records number of documents
+     * @return newline delimited records like those of "large"
+     */
+    static String ndjson(final int records) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            record(sb, random, i);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String sample(final String name) {
+        String dir = System.getProperty("samples.dir");
+        Path base = dir != null ? Path.of(dir)
+                : Files.isDirectory(Path.of("samples")) ? Path.of("samples") : Path.of("..", "samples");
+        try {
+            return Files.readString(base.resolve(name + ".json"));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("No sample document " + name + " under " + base.toAbsolutePath(), ex);
+        }
+    }
+
+    private static String large() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; sb.length() < TARGET_SIZE; i++) {
+            if (i > 0) {
+                sb.append(",\n");
+            }
+            record(sb, random, i);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void record(final StringBuilder sb, final Random random, final int id) {
+        sb.append("{\"id\":").append(id)
+                .append(",\"name\":\"user").append(random.nextInt(100_000)).append('"')
+                .append(",\"email\":\"user").append(id).append("@example.com\"")
+                .append(",\"active\":").append(random.nextBoolean())
+                .append(",\"score\":").append(random.nextInt(10_000) / 100.0)
+                .append(",\"manager\":null")
+                .append(",\"tags\":[\"a").append(random.nextInt(10)).append("\",\"b").append(random.nextInt(10)).append("\"]")
+                .append(",\"address\":{\"street\":\"").append(random.nextInt(999)).append(" Main St\"")
+                .append(",\"zip\":").append(10_000 + random.nextInt(90_000)).append("}}");
+    }
+
+    private static String deep() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int tree = 0; sb.length() < TARGET_SIZE; tree++) {
+            if (tree > 0) {
+                sb.append(',');
+            }
+            for (int d = 0; d < DEPTH; d++) {
+                sb.append(d % 2 == 0 ? "{\"level\":" + d + ",\"next\":" : "[" + d + ",");
+            }
+            sb.append("null");
+            for (int d = DEPTH - 1; d >= 0; d--) {
+                sb.append(d % 2 == 0 ? '}' : ']');
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String numbers() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("[");
+        for (int row = 0; sb.length() < TARGET_SIZE; row++) {
+            sb.append(row > 0 ? ",[" : "[");
+            for (int i = 0; i < 16; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                switch (i % 4) {
+                    case 0:
+                        sb.append(random.nextLong());
+                        break;
+                    case 1:
+                        sb.append(random.nextInt(1000));
+                        break;
+                    case 2:
+                        sb.append(random.nextDouble() * 1000);
+                        break;
+                    default:
+                        sb.append(random.nextInt(100_000) / 1000.0).append("e-").append(random.nextInt(20));
+                }
+            }
+            sb.append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String strings() {
+        Random random = new Random(42);
+        String[] pieces = {"plain ascii text ", "tab\\there ", "quote\\\" ", "line\\n", "café ",
+            "日本語 ", "\\u00e9\\u4e2d ", "emoji 😀 ", "back\\\\slash "};
+        StringBuilder sb = new StringBuilder("[");
+        for (int n = 0; sb.length() < TARGET_SIZE; n++) {
+            sb.append(n > 0 ? ",\"" : "\"");
+            for (int i = 0, count = 8 + random.nextInt(64); i < count; i++) {
+                sb.append(pieces[random.nextInt(pieces.length)]);
+            }
+            sb.append('"');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json.bench;
+
+import info.thepratts.util.json.JSON;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JSON#escape} over short and long values, with nothing to escape and
+ * with control characters, quotes and non-ASCII text.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class EscapeBenchmark {
+
+    @Param({"plain", "escapes", "unicode"})
+    public String kind;
+
+    @Param({"16", "4096"})
+    public int length;
+
+    private String value;
+
+    @Setup
+    public void setup() {
+        String piece;
+        switch (kind) {
+            case "plain":
+                piece = "nothing to escape here ";
+                break;
+            case "escapes":
+                piece = "a \"quoted\"\tline\n\\ ";
+                break;
+            default:
+                piece = "café 日本語 😀 ";
+        }
+        StringBuilder sb = new StringBuilder(length + piece.length());
+        while (sb.length() < length) {
+            sb.append(piece);
+        }
+        value = sb.substring(0, length);
+    }
+
+    @Benchmark
+    public String escape() {
+        return JSON.escape(value);
+    }
+
+    @Benchmark
+    public String escapeAscii() {
+        return JSON.escape(value, true);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json.bench;
+
+import info.thepratts.util.json.JSON;
+import info.thepratts.util.json.JSONArray;
+import info.thepratts.util.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing parsed documents back out. The sample objects exercise
+ * {@link JSONObject}; the generated documents and the array samples
+ * {@link JSONArray}.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class WriteBenchmark {
+
+    @Param({"sample", "test-01", "test-03", "test-04", "test-05", "large", "deep", "numbers", "strings"})
+    public String doc;
+
+    private JSONObject object;
+    private JSONArray<?> array;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 21);
+
+    @Setup
+    public void setup() throws IOException {
+        Object tree = JSON.from(Documents.get(doc));
+        if (tree instanceof JSONObject) {
+            object = (JSONObject) tree;
+        } else {
+            array = (JSONArray<?>) tree;
+        }
+    }
+
+    @Benchmark
+    public String compact() {
+        return object != null ? object.toString() : array.toString();
+    }
+
+    @Benchmark
+    public String indented() {
+        return object != null ? object.toString(2) : array.toString(2);
+    }
+
+    @Benchmark
+    public int writeToStream() throws IOException {
+        out.reset();
+        if (object != null) {
+            object.writeTo(out);
+        } else {
+            array.writeTo(out);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,1087 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import info.thepratts.util.json.JSONReader.Token;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * How values of one Java type are read from a {@link JSONReader} and written
+ * by a {@link JSONWriter}, worked out once per type and cached. This is what
+ * binds documents straight onto application classes, with no JSONObject in
+ * between, and what serializes such objects back out.
+ * <p>
+ * Records are built through their canonical constructor and read through
+ * their component accessors; other classes through their no-argument
+ * constructor and their fields, private and inherited ones included but not
+ * static or transient ones. Keys are matched to component and field names;
+ * unknown keys are skipped and missing ones leave the Java default. All
+ * access goes through method handles looked up when the plan is made, and
+ * primitive values pass through them unboxed. Collections, maps with String
+ * keys, arrays, enums, boxed primitives, BigInteger, BigDecimal and the tree
+ * types bind as expected; Object binds to whatever the tree would hold.
+ * Types with a registered {@link JSONCodec}, such as those generated for
+ * {@link JSONType}, use it instead.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+abstract class Binding {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<Binding> PLANS = new ClassValue<>() {
+        @Override
+        protected Binding computeValue(Class<?> type) {
+            return create(type, type);
+        }
+    };
+
+    // What abstract collection and map types are built as.
+    private static final Class<?>[] DEFAULTS = {
+        ArrayList.class, LinkedHashSet.class, TreeSet.class, ArrayDeque.class, LinkedHashMap.class, TreeMap.class
+    };
+
+    /**
+     * Read the value at the reader's current token.
+     */
+    abstract Object read(JSONReader r) throws IOException;
+
+    /**
+     * Write v, which is not null, as found at nesting level depth.
+     */
+    abstract void write(JSONWriter w, Object v, int depth) throws IOException;
+
+    static Binding of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    static Binding of(Type type) {
+        if (type instanceof Class<?> c) {
+            return of(c);
+        }
+        if (type instanceof ParameterizedType p) {
+            Class<?> raw = (Class<?>) p.getRawType();
+            return Iterable.class.isAssignableFrom(raw) || Map.class.isAssignableFrom(raw) ? create(raw, p) : of(raw);
+        }
+        if (type instanceof GenericArrayType g) {
+            Type component = g.getGenericComponentType();
+            return new ArrayOf(Array.newInstance(raw(component), 0).getClass(), component);
+        }
+        return of(raw(type));
+    }
+
+    private static Class<?> raw(Type type) {
+        if (type instanceof Class<?> c) {
+            return c;
+        }
+        if (type instanceof ParameterizedType p) {
+            return (Class<?>) p.getRawType();
+        }
+        if (type instanceof GenericArrayType g) {
+            return Array.newInstance(raw(g.getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType w) {
+            return raw(w.getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable<?> v) {
+            return raw(v.getBounds()[0]);
+        }
+        throw new IllegalArgumentException("Can't bind to " + type + ".");
+    }
+
+    private static Binding create(Class<?> raw, Type generic) {
+        // Not through the annotation, which is costly to read the first time.
+        JSONCodec<?> codec = builtIn(raw) ? null : JSONCodec.find(raw);
+        if (codec != null) {
+            return new Generated(codec);
+        }
+        if (raw == String.class) {
+            return Text.INSTANCE;
+        }
+        if (raw.isPrimitive() || raw == Boolean.class || raw == Character.class || raw == Byte.class
+                || raw == Short.class || raw == Integer.class || raw == Long.class || raw == Float.class
+                || raw == Double.class) {
+            return new Boxed(raw);
+        }
+        if (raw == BigInteger.class || raw == BigDecimal.class || raw == Number.class) {
+            return new Big(raw);
+        }
+        if (JSONObject.class.isAssignableFrom(raw) || JSONArray.class.isAssignableFrom(raw)) {
+            return new Tree(raw);
+        }
+        if (Enum.class.isAssignableFrom(raw)) {
+            return new Named(raw.isEnum() ? raw : raw.getSuperclass());
+        }
+        if (raw.isArray()) {
+            return new ArrayOf(raw, generic instanceof GenericArrayType g ? g.getGenericComponentType() : raw.getComponentType());
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            Type key = argument(generic, 0);
+            if (key != String.class && key != Object.class) {
+                throw new IllegalArgumentException("Can't bind to " + generic.getTypeName() + "; map keys must be Strings.");
+            }
+            return new Fields(raw, argument(generic, 1));
+        }
+        if (Iterable.class.isAssignableFrom(raw)) {
+            return new Elements(raw, argument(generic, 0));
+        }
+        if (raw.isRecord()) {
+            return Bean.record(raw);
+        }
+        if (raw.isInterface() || Modifier.isAbstract(raw.getModifiers()) || builtIn(raw)) {
+            return new Dynamic(raw);
+        }
+        return Bean.fields(raw);
+    }
+
+    private static Type argument(Type generic, int i) {
+        return generic instanceof ParameterizedType p ? p.getActualTypeArguments()[i] : Object.class;
+    }
+
+    private static boolean builtIn(Class<?> c) {
+        ClassLoader loader = c.getClassLoader();
+        return loader == null || loader == ClassLoader.getPlatformClassLoader();
+    }
+
+    /**
+     * @return a handle making a new c as an Object, or null if c has no
+     * usable no-argument constructor
+     */
+    private static MethodHandle constructor(Class<?> c) {
+        if (c == null) {
+            return null;
+        }
+        try {
+            Constructor<?> k = c.getDeclaredConstructor();
+            k.setAccessible(true);
+            return LOOKUP.unreflectConstructor(k).asType(methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static Class<?> implementation(Class<?> raw) {
+        if (!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+            return raw;
+        }
+        for (Class<?> c : DEFAULTS) {
+            if (raw.isAssignableFrom(c)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private static boolean common(Class<?> c) {
+        return c == ArrayList.class || c == LinkedHashMap.class || c == HashMap.class || c == LinkedHashSet.class
+                || c == HashSet.class || c == TreeMap.class || c == TreeSet.class || c == ArrayDeque.class;
+    }
+
+    /**
+     * A new collection or map. The common ones are made directly, which
+     * spares short lived programs the start up cost of method handles.
+     */
+    private static Object container(Class<?> implementation, MethodHandle construct, Class<?> type) throws IOException {
+        if (implementation == ArrayList.class) {
+            return new ArrayList<>();
+        } else if (implementation == LinkedHashMap.class) {
+            return new LinkedHashMap<>();
+        } else if (implementation == HashMap.class) {
+            return new HashMap<>();
+        } else if (implementation == LinkedHashSet.class) {
+            return new LinkedHashSet<>();
+        } else if (implementation == HashSet.class) {
+            return new HashSet<>();
+        } else if (implementation == TreeMap.class) {
+            return new TreeMap<>();
+        } else if (implementation == TreeSet.class) {
+            return new TreeSet<>();
+        } else if (implementation == ArrayDeque.class) {
+            return new ArrayDeque<>();
+        }
+        return make(construct, type);
+    }
+
+    private static Object make(MethodHandle construct, Class<?> type) throws IOException {
+        if (construct == null) {
+            throw new IllegalArgumentException("Can't bind to " + type.getName() + "; it has no usable no-argument constructor.");
+        }
+        try {
+            return (Object) construct.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * @return t as an IOException, after throwing it if it is unchecked
+     */
+    private static IOException rethrow(Throwable t) {
+        if (t instanceof RuntimeException r) {
+            throw r;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        return t instanceof IOException io ? io : new IOException(t);
+    }
+
+    private static void expect(JSONReader r, Token token, String what, Object where) throws IOException {
+        if (r.currentToken() != token) {
+            throw new IOException("Expected " + what + " for " + where + " but got " + r.currentToken() + ".");
+        }
+    }
+
+    private static void newline(JSONWriter w, boolean first, int depth) throws IOException {
+        if (!first) {
+            w.write(',');
+        }
+        w.newline(depth);
+    }
+
+    /**
+     * Java's primitive types. Values pass between the reader, the writer and
+     * the method handles as longs: integral values as themselves, booleans as
+     * 0 or 1, floating point values as the bits of a double.
+     */
+    enum Kind {
+        BOOLEAN("true or false", 0, 0),
+        CHAR("a one character string", 0, 0),
+        BYTE("a number", Byte.MIN_VALUE, Byte.MAX_VALUE),
+        SHORT("a number", Short.MIN_VALUE, Short.MAX_VALUE),
+        INT("a number", Integer.MIN_VALUE, Integer.MAX_VALUE),
+        LONG("a number", Long.MIN_VALUE, Long.MAX_VALUE),
+        FLOAT("a number", 0, 0),
+        DOUBLE("a number", 0, 0),
+        REF(null, 0, 0);
+
+        private final String expected;
+        private final long min;
+        private final long max;
+
+        Kind(String expected, long min, long max) {
+            this.expected = expected;
+            this.min = min;
+            this.max = max;
+        }
+
+        static Kind of(Class<?> c) {
+            if (c == boolean.class || c == Boolean.class) {
+                return BOOLEAN;
+            } else if (c == char.class || c == Character.class) {
+                return CHAR;
+            } else if (c == byte.class || c == Byte.class) {
+                return BYTE;
+            } else if (c == short.class || c == Short.class) {
+                return SHORT;
+            } else if (c == int.class || c == Integer.class) {
+                return INT;
+            } else if (c == long.class || c == Long.class) {
+                return LONG;
+            } else if (c == float.class || c == Float.class) {
+                return FLOAT;
+            } else if (c == double.class || c == Double.class) {
+                return DOUBLE;
+            }
+            return REF;
+        }
+
+        long read(JSONReader r, Object where) throws IOException {
+            final Token t = r.currentToken();
+            switch (this) {
+                case BOOLEAN:
+                    if (t == Token.TRUE || t == Token.FALSE) {
+                        return t == Token.TRUE ? 1 : 0;
+                    }
+                    break;
+                case CHAR:
+                    if (t == Token.STRING && r.getString().length() == 1) {
+                        return r.getString().charAt(0);
+                    }
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    if (t == Token.NUMBER) {
+                        return Double.doubleToRawLongBits(r.getDouble());
+                    }
+                    break;
+                default:
+                    if (t == Token.NUMBER) {
+                        long v = r.getLong();
+                        if (!r.isLong() || v < min || v > max) {
+                            throw new IOException(r.getNumber() + " is not a " + name().toLowerCase() + " for " + where + ".");
+                        }
+                        return v;
+                    }
+            }
+            throw new IOException("Expected " + expected + " for " + where + " but got " + t + ".");
+        }
+
+        void write(JSONWriter w, long bits) throws IOException {
+            switch (this) {
+                case BOOLEAN -> w.write(bits != 0 ? "true" : "false");
+                case CHAR -> w.string(String.valueOf((char) bits));
+                case FLOAT -> w.write(Float.toString((float) Double.longBitsToDouble(bits)));
+                case DOUBLE -> w.write(Double.toString(Double.longBitsToDouble(bits)));
+                default -> w.write(bits);
+            }
+        }
+
+        Object box(long bits) {
+            return switch (this) {
+                case BOOLEAN -> bits != 0;
+                case CHAR -> (char) bits;
+                case BYTE -> (byte) bits;
+                case SHORT -> (short) bits;
+                case INT -> (int) bits;
+                case LONG -> bits;
+                case FLOAT -> (float) Double.longBitsToDouble(bits);
+                case DOUBLE -> Double.longBitsToDouble(bits);
+                default -> throw new IllegalStateException();
+            };
+        }
+
+        /**
+         * Store bits through setter, of type (Object, primitive)void.
+         */
+        void set(MethodHandle setter, Object bean, long bits) throws Throwable {
+            switch (this) {
+                case BOOLEAN -> setter.invokeExact(bean, bits != 0);
+                case CHAR -> setter.invokeExact(bean, (char) bits);
+                case BYTE -> setter.invokeExact(bean, (byte) bits);
+                case SHORT -> setter.invokeExact(bean, (short) bits);
+                case INT -> setter.invokeExact(bean, (int) bits);
+                case LONG -> setter.invokeExact(bean, bits);
+                case FLOAT -> setter.invokeExact(bean, (float) Double.longBitsToDouble(bits));
+                case DOUBLE -> setter.invokeExact(bean, Double.longBitsToDouble(bits));
+                default -> throw new IllegalStateException();
+            }
+        }
+
+        /**
+         * Load through getter, of type (Object)primitive.
+         */
+        long get(MethodHandle getter, Object bean) throws Throwable {
+            return switch (this) {
+                case BOOLEAN -> (boolean) getter.invokeExact(bean) ? 1 : 0;
+                case CHAR -> (char) getter.invokeExact(bean);
+                case BYTE -> (byte) getter.invokeExact(bean);
+                case SHORT -> (short) getter.invokeExact(bean);
+                case INT -> (int) getter.invokeExact(bean);
+                case LONG -> (long) getter.invokeExact(bean);
+                case FLOAT -> Double.doubleToRawLongBits((float) getter.invokeExact(bean));
+                case DOUBLE -> Double.doubleToRawLongBits((double) getter.invokeExact(bean));
+                default -> throw new IllegalStateException();
+            };
+        }
+
+        void store(Object array, int i, long bits) {
+            switch (this) {
+                case BOOLEAN -> ((boolean[]) array)[i] = bits != 0;
+                case CHAR -> ((char[]) array)[i] = (char) bits;
+                case BYTE -> ((byte[]) array)[i] = (byte) bits;
+                case SHORT -> ((short[]) array)[i] = (short) bits;
+                case INT -> ((int[]) array)[i] = (int) bits;
+                case LONG -> ((long[]) array)[i] = bits;
+                case FLOAT -> ((float[]) array)[i] = (float) Double.longBitsToDouble(bits);
+                case DOUBLE -> ((double[]) array)[i] = Double.longBitsToDouble(bits);
+                default -> throw new IllegalStateException();
+            }
+        }
+
+        long load(Object array, int i) {
+            return switch (this) {
+                case BOOLEAN -> ((boolean[]) array)[i] ? 1 : 0;
+                case CHAR -> ((char[]) array)[i];
+                case BYTE -> ((byte[]) array)[i];
+                case SHORT -> ((short[]) array)[i];
+                case INT -> ((int[]) array)[i];
+                case LONG -> ((long[]) array)[i];
+                case FLOAT -> Double.doubleToRawLongBits(((float[]) array)[i]);
+                case DOUBLE -> Double.doubleToRawLongBits(((double[]) array)[i]);
+                default -> throw new IllegalStateException();
+            };
+        }
+
+        /**
+         * @param slot handle of type (long[])long
+         * @return slot converted to type (long[])c
+         */
+        MethodHandle fromBits(MethodHandle slot, Class<?> c) throws ReflectiveOperationException {
+            if (this == FLOAT || this == DOUBLE) {
+                slot = MethodHandles.filterReturnValue(slot,
+                        LOOKUP.findStatic(Double.class, "longBitsToDouble", methodType(double.class, long.class)));
+            } else if (this == BOOLEAN) {
+                // explicitCastArguments takes the low bit, which is all there is.
+                return MethodHandles.explicitCastArguments(slot, methodType(boolean.class, long[].class));
+            }
+            return MethodHandles.explicitCastArguments(slot, methodType(c, long[].class));
+        }
+    }
+
+    /**
+     * A record component or field.
+     */
+    static final class Property {
+
+        final String name;
+        // The quoted key and colon, as written.
+        final String key;
+        final Type type;
+        final Kind kind;
+        // (Object)type, with references as Object.
+        final MethodHandle getter;
+        // (Object, type)void, or null for a record component.
+        final MethodHandle setter;
+        // Index into a record's references or primitives.
+        final int slot;
+        final String where;
+        private Binding binding;
+
+        Property(String name, Type type, MethodHandle getter, MethodHandle setter, int slot, Class<?> owner) {
+            this.name = name;
+            this.key = '"' + JSON.escape(name) + "\":";
+            this.type = type;
+            this.kind = Kind.of(raw(type).isPrimitive() ? raw(type) : Object.class);
+            this.getter = getter;
+            this.setter = setter;
+            this.slot = slot;
+            this.where = "'" + name + "' of " + owner.getSimpleName();
+        }
+
+        // Resolved on first use, so that types may refer to themselves.
+        Binding binding() {
+            if (binding == null) {
+                binding = of(type);
+            }
+            return binding;
+        }
+
+        void write(JSONWriter w, Object bean, int depth) throws Throwable {
+            w.write(key);
+            if (kind != Kind.REF) {
+                kind.write(w, kind.get(getter, bean));
+                return;
+            }
+            Object v = (Object) getter.invokeExact(bean);
+            if (v == null) {
+                w.write("null");
+            } else {
+                binding().write(w, v, depth);
+            }
+        }
+    }
+
+    /**
+     * A record or a class bound through its fields.
+     */
+    static final class Bean extends Binding {
+
+        private final Class<?> type;
+        private final Property[] properties;
+        private final Map<String, Property> byName = new HashMap<>();
+        // ()Object for a class; (Object[], long[])Object for a record.
+        private final MethodHandle construct;
+        private final boolean record;
+        private final int refs;
+        private final int primitives;
+
+        private Bean(Class<?> type, Property[] properties, MethodHandle construct, boolean record, int refs, int primitives) {
+            this.type = type;
+            this.properties = properties;
+            this.construct = construct;
+            this.record = record;
+            this.refs = refs;
+            this.primitives = primitives;
+            for (Property p : properties) {
+                byName.put(p.name, p);
+            }
+        }
+
+        /**
+         * The canonical constructor, adapted to take its arguments from an
+         * array of references and an array of primitives in long form.
+         */
+        static Bean record(Class<?> type) {
+            try {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] params = new Class<?>[components.length];
+                MethodHandle[] filters = new MethodHandle[components.length];
+                int[] order = new int[components.length];
+                Property[] properties = new Property[components.length];
+                int refs = 0;
+                int primitives = 0;
+                for (int i = 0; i < components.length; i++) {
+                    Class<?> c = params[i] = components[i].getType();
+                    Kind kind = Kind.of(c.isPrimitive() ? c : Object.class);
+                    Method accessor = components[i].getAccessor();
+                    accessor.setAccessible(true);
+                    MethodHandle getter = LOOKUP.unreflect(accessor).asType(methodType(kind == Kind.REF ? Object.class : c, Object.class));
+                    int slot;
+                    if (kind == Kind.REF) {
+                        slot = refs++;
+                        filters[i] = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, slot)
+                                .asType(methodType(c, Object[].class));
+                    } else {
+                        slot = primitives++;
+                        filters[i] = kind.fromBits(MethodHandles.insertArguments(MethodHandles.arrayElementGetter(long[].class), 1, slot), c);
+                        order[i] = 1;
+                    }
+                    properties[i] = new Property(components[i].getName(), components[i].getGenericType(), getter, null, slot, type);
+                }
+                Constructor<?> canonical = type.getDeclaredConstructor(params);
+                canonical.setAccessible(true);
+                MethodHandle construct = MethodHandles.permuteArguments(
+                        MethodHandles.filterArguments(LOOKUP.unreflectConstructor(canonical), 0, filters),
+                        methodType(type, Object[].class, long[].class), order)
+                        .asType(methodType(Object.class, Object[].class, long[].class));
+                return new Bean(type, properties, construct, true, refs, primitives);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                throw new IllegalArgumentException("Can't bind to " + type.getName() + ": " + ex, ex);
+            }
+        }
+
+        static Bean fields(Class<?> type) {
+            List<Class<?>> lineage = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                lineage.add(0, c);
+            }
+            Map<String, Property> properties = new LinkedHashMap<>();
+            try {
+                for (Class<?> c : lineage) {
+                    for (Field f : c.getDeclaredFields()) {
+                        if ((f.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0 || f.isSynthetic()) {
+                            continue;
+                        }
+                        f.setAccessible(true);
+                        Class<?> t = f.getType().isPrimitive() ? f.getType() : Object.class;
+                        properties.put(f.getName(), new Property(f.getName(), f.getGenericType(),
+                                LOOKUP.unreflectGetter(f).asType(methodType(t, Object.class)),
+                                LOOKUP.unreflectSetter(f).asType(methodType(void.class, Object.class, t)), 0, type));
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                throw new IllegalArgumentException("Can't bind to " + type.getName() + ": " + ex, ex);
+            }
+            return new Bean(type, properties.values().toArray(new Property[0]), constructor(type), false, 0, 0);
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.START_OBJECT, "an object", type.getSimpleName());
+            try {
+                if (record) {
+                    Object[] a = new Object[refs];
+                    long[] bits = new long[primitives];
+                    while (r.nextToken() == Token.KEY) {
+                        Property p = byName.get(r.getString());
+                        r.nextToken();
+                        if (p == null) {
+                            r.skipValue();
+                        } else if (p.kind == Kind.REF) {
+                            a[p.slot] = p.binding().read(r);
+                        } else {
+                            bits[p.slot] = p.kind.read(r, p.where);
+                        }
+                    }
+                    return (Object) construct.invokeExact(a, bits);
+                }
+                Object bean = make(construct, type);
+                while (r.nextToken() == Token.KEY) {
+                    Property p = byName.get(r.getString());
+                    r.nextToken();
+                    if (p == null) {
+                        r.skipValue();
+                    } else if (p.kind == Kind.REF) {
+                        Object v = p.binding().read(r);
+                        p.setter.invokeExact(bean, v);
+                    } else {
+                        p.kind.set(p.setter, bean, p.kind.read(r, p.where));
+                    }
+                }
+                return bean;
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            if (properties.length == 0) {
+                w.write("{}");
+                return;
+            }
+            w.write('{');
+            try {
+                for (int i = 0; i < properties.length; i++) {
+                    newline(w, i == 0, depth + 1);
+                    properties[i].write(w, v, depth + 1);
+                }
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+            w.newline(depth);
+            w.write('}');
+        }
+    }
+
+    static final class Generated extends Binding {
+
+        final JSONCodec<?> codec;
+
+        Generated(JSONCodec<?> codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            return codec.read(r);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            ((JSONCodec<Object>) codec).write(new JSONCodec.Output(w, depth), v);
+        }
+    }
+
+    static final class Text extends Binding {
+
+        static final Text INSTANCE = new Text();
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.STRING, "a string", "String");
+            return r.getString();
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            w.string((String) v);
+        }
+    }
+
+    /**
+     * A primitive type or its wrapper, read as the wrapper.
+     */
+    static final class Boxed extends Binding {
+
+        private final Kind kind;
+        private final String name;
+
+        Boxed(Class<?> type) {
+            this.kind = Kind.of(type);
+            this.name = type.getSimpleName();
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            return r.currentToken() == Token.NULL ? null : kind.box(kind.read(r, name));
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            if (v instanceof Long l) {
+                w.write(l);
+            } else if (v instanceof Character c) {
+                w.string(c.toString());
+            } else {
+                w.write(v.toString());
+            }
+        }
+    }
+
+    /**
+     * BigInteger, BigDecimal or Number.
+     */
+    static final class Big extends Binding {
+
+        private final Class<?> type;
+
+        Big(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.NUMBER, "a number", type.getSimpleName());
+            Number n = r.getNumber();
+            if (type == Number.class || type.isInstance(n)) {
+                return n;
+            }
+            if (type == BigDecimal.class) {
+                return r.isLong() ? BigDecimal.valueOf(r.getLong()) : new BigDecimal(n.toString());
+            }
+            if (r.isLong()) {
+                return BigInteger.valueOf(r.getLong());
+            }
+            try {
+                return new BigDecimal(n.toString()).toBigIntegerExact();
+            } catch (ArithmeticException ex) {
+                throw new IOException(n + " is not an integer for BigInteger.");
+            }
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            w.write(v.toString());
+        }
+    }
+
+    /**
+     * JSONObject, JSONArray or one of their subclasses, read as in a tree.
+     */
+    static final class Tree extends Binding {
+
+        private final Class<?> type;
+
+        Tree(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            Object v = r.readValue();
+            if (v != null && !type.isInstance(v)) {
+                throw new IOException("Expected a " + type.getSimpleName() + " but got a " + v.getClass().getSimpleName() + ".");
+            }
+            return v;
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            w.value(v, depth);
+        }
+    }
+
+    /**
+     * Object, which reads as the tree would hold it, and types with nothing
+     * to bind, such as interfaces: values are written according to their
+     * class, and as their toString() if that has no binding either.
+     */
+    static final class Dynamic extends Binding {
+
+        private final Class<?> type;
+
+        Dynamic(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (type != Object.class) {
+                throw new IllegalArgumentException("Can't bind to " + type.getName() + ".");
+            }
+            return r.readValue();
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            Binding b = of(v.getClass());
+            if (b instanceof Dynamic) {
+                w.write(v.toString());
+            } else {
+                b.write(w, v, depth);
+            }
+        }
+    }
+
+    static final class Named extends Binding {
+
+        private final Class<?> type;
+        private final Map<String, Object> constants = new HashMap<>();
+
+        Named(Class<?> type) {
+            this.type = type;
+            for (Object c : type.getEnumConstants()) {
+                constants.put(((Enum<?>) c).name(), c);
+            }
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.STRING, "a string", type.getSimpleName());
+            Object c = constants.get(r.getString());
+            if (c == null) {
+                throw new IOException("No " + type.getSimpleName() + " named '" + r.getString() + "'.");
+            }
+            return c;
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            w.string(((Enum<?>) v).name());
+        }
+    }
+
+    static final class ArrayOf extends Binding {
+
+        private final Class<?> type;
+        private final Class<?> component;
+        private final Type generic;
+        private final Kind kind;
+        private Binding elements;
+
+        ArrayOf(Class<?> type, Type generic) {
+            this.type = type;
+            this.component = type.getComponentType();
+            this.generic = generic;
+            this.kind = Kind.of(component.isPrimitive() ? component : Object.class);
+        }
+
+        private Binding elements() {
+            if (elements == null) {
+                elements = of(generic);
+            }
+            return elements;
+        }
+
+        @Override
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.START_ARRAY, "an array", type.getSimpleName());
+            if (kind == Kind.REF) {
+                List<Object> list = new ArrayList<>();
+                Binding e = elements();
+                while (r.nextToken() != Token.END_ARRAY) {
+                    list.add(e.read(r));
+                }
+                return list.toArray((Object[]) Array.newInstance(component, list.size()));
+            }
+            long[] bits = new long[16];
+            int n = 0;
+            while (r.nextToken() != Token.END_ARRAY) {
+                if (n == bits.length) {
+                    bits = Arrays.copyOf(bits, n * 2);
+                }
+                bits[n++] = kind.read(r, "an element of " + type.getSimpleName());
+            }
+            Object array = Array.newInstance(component, n);
+            for (int i = 0; i < n; i++) {
+                kind.store(array, i, bits[i]);
+            }
+            return array;
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            final int length = Array.getLength(v);
+            if (length == 0) {
+                w.write("[]");
+                return;
+            }
+            w.write('[');
+            for (int i = 0; i < length; i++) {
+                newline(w, i == 0, depth + 1);
+                if (kind != Kind.REF) {
+                    kind.write(w, kind.load(v, i));
+                } else {
+                    Object e = ((Object[]) v)[i];
+                    if (e == null) {
+                        w.write("null");
+                    } else {
+                        elements().write(w, e, depth + 1);
+                    }
+                }
+            }
+            w.newline(depth);
+            w.write(']');
+        }
+    }
+
+    /**
+     * Collections and other Iterables.
+     */
+    static final class Elements extends Binding {
+
+        private final Class<?> type;
+        private final Type generic;
+        private final Class<?> implementation;
+        private final MethodHandle construct;
+        private Binding elements;
+
+        Elements(Class<?> type, Type generic) {
+            this.type = type;
+            this.generic = generic;
+            this.implementation = Collection.class.isAssignableFrom(type) || type == Iterable.class ? implementation(type) : null;
+            this.construct = common(implementation) ? null : constructor(implementation);
+        }
+
+        private Binding elements() {
+            if (elements == null) {
+                elements = of(generic);
+            }
+            return elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.START_ARRAY, "an array", type.getSimpleName());
+            Collection<Object> c = (Collection<Object>) container(implementation, construct, type);
+            Binding e = elements();
+            while (r.nextToken() != Token.END_ARRAY) {
+                c.add(e.read(r));
+            }
+            return c;
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            boolean first = true;
+            for (Object e : (Iterable<?>) v) {
+                if (first) {
+                    w.write('[');
+                }
+                newline(w, first, depth + 1);
+                first = false;
+                if (e == null) {
+                    w.write("null");
+                } else {
+                    elements().write(w, e, depth + 1);
+                }
+            }
+            if (first) {
+                w.write("[]");
+                return;
+            }
+            w.newline(depth);
+            w.write(']');
+        }
+    }
+
+    /**
+     * Maps with String keys.
+     */
+    static final class Fields extends Binding {
+
+        private final Class<?> type;
+        private final Type generic;
+        private final Class<?> implementation;
+        private final MethodHandle construct;
+        private Binding values;
+
+        Fields(Class<?> type, Type generic) {
+            this.type = type;
+            this.generic = generic;
+            this.implementation = implementation(type);
+            this.construct = common(implementation) ? null : constructor(implementation);
+        }
+
+        private Binding values() {
+            if (values == null) {
+                values = of(generic);
+            }
+            return values;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(JSONReader r) throws IOException {
+            if (r.currentToken() == Token.NULL) {
+                return null;
+            }
+            expect(r, Token.START_OBJECT, "an object", type.getSimpleName());
+            Map<String, Object> m = (Map<String, Object>) container(implementation, construct, type);
+            Binding b = values();
+            while (r.nextToken() == Token.KEY) {
+                String key = r.getString();
+                r.nextToken();
+                m.put(key, b.read(r));
+            }
+            return m;
+        }
+
+        @Override
+        void write(JSONWriter w, Object v, int depth) throws IOException {
+            Map<?, ?> m = (Map<?, ?>) v;
+            if (m.isEmpty()) {
+                w.write("{}");
+                return;
+            }
+            w.write('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                newline(w, first, depth + 1);
+                first = false;
+                w.string(String.valueOf(e.getKey()));
+                w.write(':');
+                if (e.getValue() == null) {
+                    w.write("null");
+                } else {
+                    values().write(w, e.getValue(), depth + 1);
+                }
+            }
+            w.newline(depth);
+            w.write('}');
+        }
+    }
+}
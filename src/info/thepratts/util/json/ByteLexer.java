@@ -0,0 +1,373 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static info.thepratts.util.json.JSON.LEXEME.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Lexer working directly on UTF-8 encoded bytes. Only string tokens are ever
+ * decoded; everything else is recognized from the raw bytes, so there is no
+ * separate charset decoding pass over the document.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+class ByteLexer extends Lexer {
+
+    private InputStream data;
+    ByteBuffer buf;
+    int pos;
+    int limit;
+    // The read buffer for InputStreams, kept across resets.
+    private ByteBuffer window;
+
+    // Bytes of a string token that straddles a window boundary.
+    private byte[] pending = new byte[64];
+    private int pendingLength;
+
+    ByteLexer(final InputStream data) {
+        reset(data);
+    }
+
+    /**
+     * Lex the remaining bytes of a buffer. The buffer's position is not
+     * changed.
+     */
+    ByteLexer(final ByteBuffer data) {
+        reset(data);
+    }
+
+    /**
+     * Start over on a new InputStream, keeping the read buffer.
+     */
+    final void reset(final InputStream data) {
+        reset();
+        if (window == null) {
+            window = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        this.data = data;
+        this.buf = window;
+        this.pos = this.limit = 0;
+    }
+
+    /**
+     * Start over on the remaining bytes of a buffer.
+     */
+    final void reset(final ByteBuffer data) {
+        reset();
+        this.data = null;
+        this.buf = data;
+        this.pos = data.position();
+        this.limit = data.limit();
+    }
+
+    @Override
+    void reset() {
+        super.reset();
+        if (pending.length > MAX_RETAINED) {
+            pending = new byte[64];
+        }
+        pendingLength = 0;
+    }
+
+    @Override
+    void release() {
+        super.release();
+        data = null;
+        buf = window;
+        pos = limit = 0;
+    }
+
+    /**
+     * Replace the window with the next chunk of the source.
+     *
+     * @return false if the source is exhausted
+     */
+    boolean fill() throws IOException {
+        if (data == null) {
+            return false;
+        }
+        byte[] a = buf.array();
+        int n;
+        do {
+            n = data.read(a, 0, a.length);
+        } while (n == 0);
+        if (n < 0) {
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    void close() throws IOException {
+        if (data != null) {
+            data.close();
+        }
+    }
+
+    @Override
+    void nextToken() throws IOException {
+        // Eat up whitespace
+        int ch = consumeWhitespace();
+
+        if (ch == -1) {
+            token = EOD;
+            return;
+        }
+
+        token = lexeme(ch);
+
+        switch (token) {
+            case FALSE -> skip(5);
+            case TRUE, NULL -> skip(4);
+            case NUMBER -> number(ch);
+            case STRING -> string();
+            case L_BRACE, L_BRACKET, R_BRACKET, R_BRACE, COLON, COMMA -> pos++;
+            default -> throw new IOException("Unexpected token " + token);
+        }
+    }
+
+    @Override
+    int position() {
+        return pos;
+    }
+
+    @Override
+    RawSource source() {
+        return data == null ? new RawSource(buf, keys) : null;
+    }
+
+    /**
+     * Skip whitespace and return the next byte, as an unsigned value, without
+     * consuming it, or -1 at the end of the document.
+     */
+    @Override
+    int consumeWhitespace() throws IOException {
+        for (;;) {
+            while (pos < limit) {
+                int b = buf.get(pos) & 0xff;
+                if (b > ' ' || !Character.isWhitespace(b)) {
+                    return b;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    void skipToken() throws IOException {
+        int ch = consumeWhitespace();
+
+        if (ch == -1) {
+            token = EOD;
+            return;
+        }
+
+        token = lexeme(ch);
+
+        switch (token) {
+            case FALSE -> skip(5);
+            case TRUE, NULL -> skip(4);
+            case NUMBER -> skipNumber(ch);
+            case STRING -> {
+                pos++;
+                skipString();
+            }
+            case L_BRACE, L_BRACKET, R_BRACKET, R_BRACE, COLON, COMMA -> pos++;
+            default -> throw new IOException("Unexpected token " + token);
+        }
+    }
+
+    /**
+     * Skip the rest of a string whose opening quote has been consumed.
+     */
+    private void skipString() throws IOException {
+        for (;;) {
+            pos = StructuralIndex.quoteOrBackslash(buf, pos, limit);
+            if (pos == limit) {
+                if (!fill()) {
+                    throw new IOException("End of document reached in string.");
+                }
+                continue;
+            }
+            if (buf.get(pos++) == '"') {
+                return;
+            }
+            skipEscape();
+        }
+    }
+
+    private void skip(int n) throws IOException {
+        while (n > 0) {
+            if (pos == limit && !fill()) {
+                return;
+            }
+            int step = Math.min(n, limit - pos);
+            pos += step;
+            n -= step;
+        }
+    }
+
+    private void number(int ch) throws IOException {
+        // index 0
+        numberStart(ch);
+        pos++;
+
+        // Beyond index 0; number characters are all ASCII.
+        for (;;) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            byte c = buf.get(pos);
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == '+' || c == '-' || c == 'E') {
+                sb.append((char) c);
+            } else {
+                break;
+            }
+            pos++;
+        }
+
+        numberValue();
+    }
+
+    /**
+     * Pass over a number, checking it as number() would read it.
+     */
+    private void skipNumber(int ch) throws IOException {
+        numberStart(ch);
+        int state = numberState(ch);
+        pos++;
+        for (;;) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            byte c = buf.get(pos);
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == '+' || c == '-' || c == 'E') {
+                state = numberState(state, c);
+            } else {
+                break;
+            }
+            pos++;
+        }
+        numberEnd(state);
+    }
+
+    @Override
+    int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf.get(pos++) & 0xff;
+    }
+
+    private void string() throws IOException {
+        pendingLength = 0;
+        boolean escaped = false;
+        pos++; // opening quote
+        int start = pos;
+        // Look for end quote, a word at a time.
+        for (;;) {
+            pos = StructuralIndex.quoteOrBackslash(buf, pos, limit);
+            if (pos == limit) {
+                keep(start, pos);
+                if (!fill()) {
+                    throw new IOException("End of document reached in string.");
+                }
+                start = pos;
+                continue;
+            }
+            if (buf.get(pos) == '"') {
+                break;
+            }
+            // A backslash; from here on the string is decoded into 'sb'.
+            if (!escaped) {
+                sb.setLength(0);
+                escaped = true;
+            }
+            keep(start, pos);
+            flushPending();
+            pos++;
+            escape();
+            start = pos;
+        }
+        if (escaped) {
+            keep(start, pos);
+            flushPending();
+            value = key ? keys.key(sb) : sb.toString();
+        } else if (pendingLength == 0) {
+            String k = key ? keys.key(buf, start, pos) : null;
+            value = k != null ? k : decode(start, pos);
+        } else {
+            keep(start, pos);
+            String s = new String(pending, 0, pendingLength, UTF_8);
+            value = key ? keys.key(s) : s;
+        }
+        pos++; // closing quote
+    }
+
+    /**
+     * Move the pending string bytes, decoded, into 'sb'.
+     */
+    private void flushPending() {
+        if (pendingLength > 0) {
+            sb.append(new String(pending, 0, pendingLength, UTF_8));
+            pendingLength = 0;
+        }
+    }
+
+    /**
+     * Decode the window bytes [from, to) as a String.
+     */
+    String decode(int from, int to) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + from, to - from, UTF_8);
+        }
+        pendingLength = 0;
+        keep(from, to);
+        return new String(pending, 0, pendingLength, UTF_8);
+    }
+
+    /**
+     * Append the window bytes [from, to) to the pending string bytes.
+     */
+    private void keep(int from, int to) {
+        int n = to - from;
+        if (pendingLength + n > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + n));
+        }
+        buf.get(from, pending, pendingLength, n);
+        pendingLength += n;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static info.thepratts.util.json.JSON.LEXEME.*;
+
+/**
+ * Lexer for character input behind {@link JSON#from(Reader)}. Characters are
+ * pulled from the source in large chunks into a reusable window and tokens are
+ * scanned by index rather than through one {@link Reader#read()} per
+ * character.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+class CharLexer extends Lexer {
+
+    private Reader data;
+    private char[] buf;
+    private int pos;
+    private int limit;
+    // The read buffer for Readers, kept across resets.
+    private char[] window;
+
+    CharLexer(final Reader data) {
+        reset(data);
+    }
+
+    /**
+     * Lex a fixed block of characters. No further reads are made once the
+     * block is exhausted.
+     */
+    CharLexer(final char[] data, int offset, int length) {
+        reset(data, offset, length);
+    }
+
+    /**
+     * Start over on a new Reader, keeping the read buffer.
+     */
+    final void reset(final Reader data) {
+        reset();
+        if (window == null) {
+            window = new char[BUFFER_SIZE];
+        }
+        this.data = data;
+        this.buf = window;
+        this.pos = this.limit = 0;
+    }
+
+    /**
+     * Start over on a new fixed block of characters.
+     */
+    final void reset(final char[] data, int offset, int length) {
+        reset();
+        this.data = null;
+        this.buf = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    void release() {
+        super.release();
+        data = null;
+        buf = window;
+        pos = limit = 0;
+    }
+
+    /**
+     * Replace the window with the next chunk of the source.
+     *
+     * @return false if the source is exhausted
+     */
+    boolean fill() throws IOException {
+        if (data == null) {
+            return false;
+        }
+        int n;
+        do {
+            n = data.read(buf, 0, buf.length);
+        } while (n == 0);
+        if (n < 0) {
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    void close() throws IOException {
+        if (data != null) {
+            data.close();
+        }
+    }
+
+    @Override
+    void nextToken() throws IOException {
+        // Eat up whitespace
+        int ch = consumeWhitespace();
+
+        if (ch == -1) {
+            token = EOD;
+            return;
+        }
+
+        token = lexeme(ch);
+
+        switch (token) {
+            case FALSE -> skip(5);
+            case TRUE, NULL -> skip(4);
+            case NUMBER -> number(ch);
+            case STRING -> string();
+            case L_BRACE, L_BRACKET, R_BRACKET, R_BRACE, COLON, COMMA -> pos++;
+            default -> throw new IOException("Unexpected token " + token);
+        }
+    }
+
+    @Override
+    int position() {
+        return pos;
+    }
+
+    @Override
+    RawSource source() {
+        return data == null ? new RawSource(buf, keys) : null;
+    }
+
+    /**
+     * Skip whitespace and return the next character without consuming it, or
+     * -1 at the end of the document.
+     */
+    @Override
+    int consumeWhitespace() throws IOException {
+        for (;;) {
+            while (pos < limit) {
+                char c = buf[pos];
+                if (!Character.isWhitespace(c)) {
+                    return c;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    void skipToken() throws IOException {
+        int ch = consumeWhitespace();
+
+        if (ch == -1) {
+            token = EOD;
+            return;
+        }
+
+        token = lexeme(ch);
+
+        switch (token) {
+            case FALSE -> skip(5);
+            case TRUE, NULL -> skip(4);
+            case NUMBER -> skipNumber(ch);
+            case STRING -> {
+                pos++;
+                skipString();
+            }
+            case L_BRACE, L_BRACKET, R_BRACKET, R_BRACE, COLON, COMMA -> pos++;
+            default -> throw new IOException("Unexpected token " + token);
+        }
+    }
+
+    /**
+     * Skip the rest of a string whose opening quote has been consumed.
+     */
+    private void skipString() throws IOException {
+        for (;;) {
+            if (pos == limit && !fill()) {
+                throw new IOException("End of document reached in string.");
+            }
+            char c = buf[pos++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                skipEscape();
+            }
+        }
+    }
+
+    private void skip(int n) throws IOException {
+        while (n > 0) {
+            if (pos == limit && !fill()) {
+                return;
+            }
+            int step = Math.min(n, limit - pos);
+            pos += step;
+            n -= step;
+        }
+    }
+
+    private void number(int ch) throws IOException {
+        // index 0
+        numberStart(ch);
+        pos++;
+
+        // Beyond index 0
+        int start = pos;
+        for (;;) {
+            if (pos == limit) {
+                sb.append(buf, start, pos - start);
+                if (!fill()) {
+                    start = pos;
+                    break;
+                }
+                start = pos;
+            }
+            char c = buf[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == '+' || c == '-' || c == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        sb.append(buf, start, pos - start);
+
+        numberValue();
+    }
+
+    /**
+     * Pass over a number, checking it as number() would read it.
+     */
+    private void skipNumber(int ch) throws IOException {
+        numberStart(ch);
+        int state = numberState(ch);
+        pos++;
+        for (;;) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buf[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == '+' || c == '-' || c == 'E') {
+                state = numberState(state, c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        numberEnd(state);
+    }
+
+    @Override
+    int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private void string() throws IOException {
+        sb.setLength(0);
+        pos++; // opening quote
+        int start = pos;
+        // Look for end quote
+        for (;;) {
+            if (pos == limit) {
+                sb.append(buf, start, pos - start);
+                if (!fill()) {
+                    throw new IOException("End of document reached in string.");
+                }
+                start = pos;
+            }
+            char c = buf[pos];
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                sb.append(buf, start, pos - start);
+                pos++;
+                escape();
+                start = pos;
+                continue;
+            }
+            pos++;
+        }
+        if (sb.length() == 0) {
+            // Neither escaped nor split across windows.
+            value = key ? keys.key(buf, start, pos - start) : new String(buf, start, pos - start);
+        } else {
+            sb.append(buf, start, pos - start);
+            value = key ? keys.key(sb) : sb.toString();
+        }
+        pos++; // closing quote
+    }
+}
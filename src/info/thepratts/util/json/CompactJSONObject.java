@@ -0,0 +1,506 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A JSONObject for small objects. Up to {@value #THRESHOLD} entries are kept
+ * in a single flat key/value array and found by a linear scan; the inherited
+ * hash table is never allocated. Adding more entries than that moves them
+ * into the hash table for good.
+ * <p>
+ * While compact, iteration follows insertion order.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class CompactJSONObject extends JSONObject {
+
+    static final int THRESHOLD = 8;
+
+    private static final Object[] EMPTY = {};
+
+    // k0, v0, k1, v1, ...; null once the entries have moved to the hash table.
+    private Object[] slots = EMPTY;
+    private int size;
+
+    public CompactJSONObject() {
+        super();
+    }
+
+    public CompactJSONObject(Map<String, ?> m) {
+        super();
+        putAll(m);
+    }
+
+    private boolean compact() {
+        return slots != null;
+    }
+
+    private int indexOf(Object key) {
+        final Object[] s = slots;
+        final int n = size << 1;
+        for (int i = 0; i < n; i += 2) {
+            if (Objects.equals(key, s[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void inflate() {
+        final Object[] s = slots;
+        final int n = size << 1;
+        slots = null;
+        size = 0;
+        for (int i = 0; i < n; i += 2) {
+            super.put((String) s[i], s[i + 1]);
+        }
+    }
+
+    private void removeAt(int i) {
+        int n = size << 1;
+        System.arraycopy(slots, i + 2, slots, i, n - i - 2);
+        slots[n - 2] = null;
+        slots[n - 1] = null;
+        size--;
+    }
+
+    @Override
+    public int size() {
+        return compact() ? size : super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        return (T) get((Object) key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!compact()) {
+            return super.get(key);
+        }
+        int i = indexOf(key);
+        return i < 0 ? null : slots[i + 1];
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        if (!compact()) {
+            return super.getOrDefault(key, defaultValue);
+        }
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : slots[i + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return compact() ? indexOf(key) >= 0 : super.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        if (!compact()) {
+            return super.containsValue(value);
+        }
+        for (int i = 1; i < size << 1; i += 2) {
+            if (Objects.equals(value, slots[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (!compact()) {
+            return super.put(key, value);
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            Object old = slots[i + 1];
+            slots[i + 1] = value;
+            return old;
+        }
+        if (size == THRESHOLD) {
+            inflate();
+            return super.put(key, value);
+        }
+        int n = size << 1;
+        if (n == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(4, Math.min(n * 2, THRESHOLD * 2)));
+        }
+        slots[n] = key;
+        slots[n + 1] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        if (!compact()) {
+            super.putAll(m);
+            return;
+        }
+        m.forEach(this::put);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        if (!compact()) {
+            return super.putIfAbsent(key, value);
+        }
+        int i = indexOf(key);
+        if (i >= 0 && slots[i + 1] != null) {
+            return slots[i + 1];
+        }
+        return put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!compact()) {
+            return super.remove(key);
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object old = slots[i + 1];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!compact()) {
+            return super.remove(key, value);
+        }
+        int i = indexOf(key);
+        if (i < 0 || !Objects.equals(value, slots[i + 1])) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        if (!compact()) {
+            return super.replace(key, value);
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object old = slots[i + 1];
+        slots[i + 1] = value;
+        return old;
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        if (!compact()) {
+            return super.replace(key, oldValue, newValue);
+        }
+        int i = indexOf(key);
+        if (i < 0 || !Objects.equals(oldValue, slots[i + 1])) {
+            return false;
+        }
+        slots[i + 1] = newValue;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (compact()) {
+            Arrays.fill(slots, 0, size << 1, null);
+            size = 0;
+        } else {
+            super.clear();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        if (!compact()) {
+            super.forEach(action);
+            return;
+        }
+        final Object[] s = slots;
+        final int n = size;
+        for (int i = 0; i < n << 1; i += 2) {
+            action.accept((String) s[i], s[i + 1]);
+        }
+        if (s != slots || n != size) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    // The compute family is rare on parsed documents; the hash table does it.
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        if (compact()) {
+            inflate();
+        }
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        if (compact()) {
+            inflate();
+        }
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        if (compact()) {
+            inflate();
+        }
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        if (compact()) {
+            inflate();
+        }
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        if (compact()) {
+            inflate();
+        }
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Object clone() {
+        return new CompactJSONObject(this);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                if (!compact()) {
+                    return CompactJSONObject.super.entrySet().iterator();
+                }
+                return new Slots<>() {
+                    @Override
+                    Map.Entry<String, Object> element(int i) {
+                        return new SlotEntry(i);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactJSONObject.this.size();
+            }
+
+            @Override
+            public void clear() {
+                CompactJSONObject.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                if (!compact()) {
+                    return CompactJSONObject.super.keySet().iterator();
+                }
+                return new Slots<>() {
+                    @Override
+                    String element(int i) {
+                        return (String) slots[i];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactJSONObject.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public void clear() {
+                CompactJSONObject.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Object> iterator() {
+                if (!compact()) {
+                    return CompactJSONObject.super.values().iterator();
+                }
+                return new Slots<>() {
+                    @Override
+                    Object element(int i) {
+                        return slots[i + 1];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactJSONObject.this.size();
+            }
+
+            @Override
+            public void clear() {
+                CompactJSONObject.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Iterates the compact slots; 'element' picks what is returned for the
+     * entry at slot index i.
+     */
+    private abstract class Slots<E> implements Iterator<E> {
+
+        int next;
+        int last = -1;
+        final Object[] expected = slots;
+
+        abstract E element(int i);
+
+        @Override
+        public boolean hasNext() {
+            return next < size << 1;
+        }
+
+        @Override
+        public E next() {
+            if (slots != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next += 2;
+            return element(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (slots != expected) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private final class SlotEntry implements Map.Entry<String, Object> {
+
+        private final String key;
+        private Object value;
+
+        SlotEntry(int i) {
+            key = (String) slots[i];
+            value = slots[i + 1];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = this.value;
+            this.value = value;
+            put(key, value);
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(key, e.getKey())
+                    && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.Arrays;
+
+/**
+ * A JSONArray of doubles kept in a double[] rather than as boxed Doubles. The
+ * parser produces one for an array holding nothing but decimal numbers when
+ * primitive arrays are enabled; see {@link JSONParser#primitiveArrays}.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class DoubleJSONArray extends PrimitiveJSONArray<Double> {
+
+    private static final double[] EMPTY = {};
+
+    private double[] values;
+
+    public DoubleJSONArray() {
+        values = EMPTY;
+    }
+
+    /**
+     * @param values initial contents, copied
+     */
+    public DoubleJSONArray(double... values) {
+        this(values.clone(), values.length);
+    }
+
+    /**
+     * Adopt values[0 .. size) without copying.
+     */
+    DoubleJSONArray(double[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public double getDouble(int i) {
+        if (!primitive()) {
+            return super.getDouble(i);
+        }
+        checkIndex(i);
+        return values[i];
+    }
+
+    public void setDouble(int i, double value) {
+        if (!primitive()) {
+            set(i, value);
+            return;
+        }
+        checkIndex(i);
+        values[i] = value;
+    }
+
+    public void addDouble(double value) {
+        if (!primitive()) {
+            add(value);
+            return;
+        }
+        insert(size, value);
+        appended();
+    }
+
+    /**
+     * @return a copy of the contents
+     */
+    public double[] toDoubleArray() {
+        if (!primitive()) {
+            double[] a = new double[size()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = getDouble(i);
+            }
+            return a;
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public long getLong(int i) {
+        return (long) getDouble(i);
+    }
+
+    @Override
+    Double box(int i) {
+        return values[i];
+    }
+
+    @Override
+    boolean accepts(Object e) {
+        return e instanceof Double;
+    }
+
+    @Override
+    void store(int i, Double e) {
+        values[i] = e;
+    }
+
+    @Override
+    void insert(int i, Double e) {
+        insert(i, e.doubleValue());
+    }
+
+    private void insert(int i, double e) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = e;
+    }
+
+    @Override
+    void delete(int i) {
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+    }
+
+    @Override
+    void release() {
+        values = null;
+    }
+
+    @Override
+    public Object clone() {
+        return primitive() ? new DoubleJSONArray(Arrays.copyOf(values, size), size) : new JSONArray<>(this);
+    }
+}
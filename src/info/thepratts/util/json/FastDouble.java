@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.math.BigInteger;
+
+/**
+ * Converts a decimal significand and exponent to the nearest double without
+ * going through text. Small cases take Clinger's exact fast path; the rest use
+ * the Eisel-Lemire algorithm with a 128 bit table of powers of five. Whenever
+ * the result cannot be decided cheaply NaN is returned and the caller falls
+ * back to {@link Double#parseDouble(String)}.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class FastDouble {
+
+    private static final int MIN_Q = -342;
+    private static final int MAX_Q = 308;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * 5^q for q in [MIN_Q, MAX_Q], normalized so the most significant bit is
+     * set and truncated to 128 bits; stored as (high, low) pairs.
+     */
+    private static final long[] POWERS_OF_FIVE = new long[2 * (MAX_Q - MIN_Q + 1)];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = MIN_Q; q <= MAX_Q; q++) {
+            BigInteger c;
+            if (q < 0) {
+                BigInteger power5 = five.pow(-q);
+                int z = power5.subtract(BigInteger.ONE).bitLength(); // smallest z with 2^z >= 5^-q
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+            } else {
+                c = five.pow(q);
+            }
+            int excess = c.bitLength() - 128;
+            c = excess >= 0 ? c.shiftRight(excess) : c.shiftLeft(-excess);
+            int i = 2 * (q - MIN_Q);
+            POWERS_OF_FIVE[i] = c.shiftRight(64).longValue();
+            POWERS_OF_FIVE[i + 1] = c.longValue();
+        }
+    }
+
+    private FastDouble() {
+    }
+
+    /**
+     * Compute w * 10^q rounded to the nearest double.
+     *
+     * @param w significand, treated as unsigned
+     * @param q decimal exponent
+     * @return the value, or NaN if the slow path is needed
+     */
+    static double toDouble(long w, int q) {
+        if (w == 0 || q < MIN_Q) {
+            return 0;
+        }
+        if (q > MAX_Q) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (w >= 0 && w <= 1L << 53 && q >= -22 && q <= 22) {
+            // Both operands are exact, so a single rounding happens.
+            return q < 0 ? w / POWERS_OF_TEN[-q] : w * POWERS_OF_TEN[q];
+        }
+        return eiselLemire(w, q);
+    }
+
+    private static double eiselLemire(long w, int q) {
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        int index = 2 * (q - MIN_Q);
+        long hi = multiplyHigh(w, POWERS_OF_FIVE[index]);
+        long lo = w * POWERS_OF_FIVE[index];
+        final long mask = -1L >>> 55;
+        if ((hi & mask) == mask) {
+            // Not enough precision yet; bring in the low half of the power.
+            long hi2 = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            lo += hi2;
+            if (Long.compareUnsigned(hi2, lo) > 0) {
+                hi++;
+            }
+            if (lo == -1L && (q < -27 || q > 55)) {
+                return Double.NaN;
+            }
+        }
+
+        int upperBit = (int) (hi >>> 63);
+        long mantissa = hi >>> (upperBit + 9);
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+        if (power2 <= 0) {
+            // Subnormal; rare enough to leave to the slow path.
+            return Double.NaN;
+        }
+
+        // Exactly halfway between two doubles: round to even.
+        if ((lo == 0 || lo == 1) && q >= -4 && q <= 23 && (mantissa & 3) == 1
+                && (mantissa << (upperBit + 9)) == hi) {
+            mantissa &= ~1L;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (2L << 52)) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7ff) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Double.longBitsToDouble(mantissa | (long) power2 << 52);
+    }
+
+    private static long multiplyHigh(long a, long b) {
+        // Unsigned high word of the 128 bit product.
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
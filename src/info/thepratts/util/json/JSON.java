@@ -24,8 +24,10 @@
 package info.thepratts.util.json;
 
 import java.io.*;
-
-import static info.thepratts.util.json.JSON.LEXEME.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  *
@@ -33,27 +35,90 @@ import static info.thepratts.util.json.JSON.LEXEME.*;
  */
 public class JSON {
 
-    static String escape(String value) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < value.length(); i++) {
-            char v = value.charAt(i);
-            switch (v) {
-                case '\n' -> sb.append("\\n");
-                case '\r' -> sb.append("\\r");
-                case '\b' -> sb.append("\\b");
-                case '\f' -> sb.append("\\f");
-                case '\t' -> sb.append("\\t");
-                case '"' -> sb.append("\\\"");
-                default -> {
-                    if (Character.isISOControl(v)) {
-                        sb.append(String.format("\\u%04x", (int) v));
-                    } else {
-                        sb.append(v);
-                    }
-                }
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Replacement text for each ASCII character that must be escaped in a
+     * JSON string, null for the rest. Shared by {@link #escape(String)} and
+     * {@link JSONWriter}.
+     */
+    static final String[] ESCAPES = new String[128];
+
+    // Behind from(...): keeps a few lexers and their buffers for reuse.
+    private static final JSONParser DEFAULT = new JSONParser();
+
+    static {
+        for (char c = 0; c < 0x20; c++) {
+            ESCAPES[c] = unicodeEscape(c);
+        }
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES[0x7f] = unicodeEscape((char) 0x7f);
+    }
+
+    private static String unicodeEscape(char c) {
+        return new String(new char[]{'\\', 'u', HEX[c >> 12], HEX[(c >> 8) & 0xf], HEX[(c >> 4) & 0xf], HEX[c & 0xf]});
+    }
+
+    /**
+     * @return the escape sequence for c, or null if c is written as is
+     */
+    static String escapeOf(char c) {
+        if (c < 0x80) {
+            return ESCAPES[c];
+        }
+        // The C1 control characters.
+        return c < 0xa0 ? unicodeEscape(c) : null;
+    }
+
+    /**
+     * Escape value for use inside a JSON string. If nothing needs escaping,
+     * which is by far the common case, value itself is returned.
+     *
+     * @param value the raw text
+     * @return the escaped text
+     */
+    public static String escape(String value) {
+        return escape(value, false);
+    }
+
+    /**
+     * Escape value for use inside a JSON string, optionally writing every
+     * non-ASCII character as a Unicode escape so the result is pure ASCII.
+     *
+     * @param value the raw text
+     * @param asciiOnly true to escape all non-ASCII characters
+     * @return the escaped text; value itself if nothing needed escaping
+     */
+    public static String escape(String value, boolean asciiOnly) {
+        final int length = value.length();
+        int i = 0;
+        while (i < length && escapeOf(value.charAt(i), asciiOnly) == null) {
+            i++;
+        }
+        if (i == length) {
+            return value;
+        }
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        int start = 0;
+        for (; i < length; i++) {
+            String e = escapeOf(value.charAt(i), asciiOnly);
+            if (e != null) {
+                sb.append(value, start, i).append(e);
+                start = i + 1;
             }
         }
-        return sb.toString();
+        return sb.append(value, start, length).toString();
+    }
+
+    private static String escapeOf(char c, boolean asciiOnly) {
+        return asciiOnly && c >= 0x80 ? unicodeEscape(c) : escapeOf(c);
     }
 
     enum LEXEME {
@@ -101,7 +166,7 @@ public class JSON {
         }
 
         static LEXEME map(int ch) {
-            return map[ch];
+            return ch < map.length ? map[ch] : null;
         }
     }
 
@@ -109,239 +174,217 @@ public class JSON {
         return new JSONStream(data);
     }
 
+    /**
+     * Stream concatenated or newline delimited UTF-8 documents.
+     */
+    public static JSONStream objectsFrom(final InputStream data) {
+        return new JSONStream(new ByteLexer(data));
+    }
+
+    /**
+     * Stream the concatenated UTF-8 documents of a file through a memory
+     * mapping. The returned stream must be closed to release the file.
+     */
+    public static JSONStream objectsFrom(final Path file) throws IOException {
+        return new JSONStream(new MappedLexer(FileChannel.open(file, StandardOpenOption.READ)));
+    }
+
     public static <T> T from(final String data) throws IOException {
-        return from(new StringReader(data));
+        return DEFAULT.parse(data);
     }
 
+    /**
+     * Parse a UTF-8 encoded document. The bytes are lexed directly, without
+     * decoding the stream into characters first.
+     */
     public static <T> T from(final InputStream data) throws IOException {
-        return from(new InputStreamReader(data));
+        return DEFAULT.parse(data);
     }
 
-    @SuppressWarnings("unchecked")
-    public static <T> T from(final Reader data) throws IOException {
+    public static <T> T from(final byte[] data) throws IOException {
+        return from(data, 0, data.length);
+    }
 
-        class Lexer {
+    /**
+     * Parse a UTF-8 encoded document held in data[offset .. offset+length).
+     */
+    public static <T> T from(final byte[] data, int offset, int length) throws IOException {
+        return from(ByteBuffer.wrap(data, offset, length));
+    }
 
-            int ch;
-            Object value;
-            final StringBuilder sb = new StringBuilder();
-            LEXEME token = BOD;
+    /**
+     * Parse the UTF-8 encoded document between the buffer's position and
+     * limit. The buffer's position is left unchanged.
+     */
+    public static <T> T from(final ByteBuffer data) throws IOException {
+        return DEFAULT.parse(data);
+    }
 
-            Lexer() throws IOException {
-                ch = data.read();
-            }
+    public static <T> T from(final Reader data) throws IOException {
+        return DEFAULT.parse(data);
+    }
 
-            /**
-             * Consume the entire token. 'token' is left with the token type and
-             * value its 'value' if it is a string or a number. If the next
-             * token is not 'expected', then throw an exception with note.
-             */
-            void nextTokenColonCheck() throws IOException {
-                nextToken();
-                if (token != LEXEME.COLON) {
-                    throw new IOException("Missing ':'.");
-                }
-            }
+    /**
+     * Parse a UTF-8 encoded file by lexing straight out of a memory mapping
+     * of it.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T from(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return (T) new MappedLexer(channel).document();
+        }
+    }
 
-            /**
-             * Consume the entire token. 'token' is left with the token type and
-             * value its 'value' if it is a string or a number.
-             */
-            void nextToken() throws IOException {
-                // Eat up whitespace
-                consumeWhitespace();
-
-                if (ch == -1) {
-                    token = EOD;
-                    return;
-                }
+    /**
+     * Bind the first document in data straight onto type, reading from the
+     * tokens without building a JSONObject in between:
+     * <pre>
+     * record Trade(String symbol, long quantity, double price) {}
+     *
+     * Trade t = JSON.from(message, Trade.class);
+     * </pre> Records are built through their canonical constructor and other
+     * classes through their no-argument constructor and fields, matching keys
+     * to component and field names. Unknown keys are skipped and missing ones
+     * leave the Java default. Values of primitive type are never boxed.
+     * Nested records and classes, collections, maps with String keys, arrays,
+     * enums (by name), wrappers, BigInteger and BigDecimal are bound by their
+     * declared types; Object, JSONObject and JSONArray by building a tree.
+     * How to bind each type is worked out once and cached.
+     *
+     * @param <T> the type
+     * @param data the document
+     * @param type the type to bind to
+     * @return the value, or null if data holds no document
+     * @throws IOException if the document is bad or does not fit type
+     * @throws IllegalArgumentException if type can't be bound to, such as an
+     * interface or a class without a no-argument constructor
+     */
+    public static <T> T from(final String data, final Class<T> type) throws IOException {
+        return DEFAULT.parse(data, type);
+    }
 
-                token = LEXEME.map(ch);
+    public static <T> T from(final Reader data, final Class<T> type) throws IOException {
+        return DEFAULT.parse(data, type);
+    }
 
-                if (token == null) {
-                    throw new IOException("Invalid character '" + (char) ch + "' encountered while searching for next token.");
-                }
+    public static <T> T from(final InputStream data, final Class<T> type) throws IOException {
+        return DEFAULT.parse(data, type);
+    }
 
-                switch (token) {
-                    case FALSE: // Order and lack of break stmt are correct here. This is set up to consume proper # of characters.
-                        data.read();
-                    case TRUE:
-                    case NULL:
-                        data.read();
-                        data.read();
-                        data.read();
-                        ch = data.read();
-                        break;
-                    case NUMBER:
-                        sb.setLength(0);
-                        boolean isDecimal = false;
-                        // index 0
-                        if (ch == '-' || ch == '+' || Character.isDigit(ch)) {
-                            sb.append((char) ch);
-                        } else {
-                            throw new IOException("Expected a number, got " + (char) ch + " instead.");
-                        }
-
-                        // Beyond index 0
-                        for (;;) {
-                            ch = data.read();
-                            if (Character.isDigit(ch)) {
-                                sb.append((char) ch);
-                            } else if (ch == '.'
-                                    || ch == 'e'
-                                    || ch == '+'
-                                    || ch == '-'
-                                    || ch == 'E') {
-                                sb.append((char) ch);
-                                isDecimal = true;
-                            } else {
-                                break;
-                            }
-                        }
-
-                        if (isDecimal) {
-                            value = Double.valueOf(sb.toString());
-                        } else {
-                            value = Long.valueOf(sb.toString());
-                        }
-
-                        break;
-                    case STRING: // Quoted String
-                        sb.setLength(0);
-                        ch = data.read();
-                        // Look for end quote
-                        while (ch != '"') {
-                            if (ch == -1) {
-                                throw new IOException("End of document reached in string.");
-                            }
-                            if (ch == '\\') {
-                                sb.append("\\");
-                                ch = data.read();
-                                if (ch == -1) {
-                                    throw new IOException("End of document reached in string.");
-                                }
-                            }
-                            sb.append((char) ch);
-                            ch = data.read();
-                        }
-                        value = sb.toString();
-                        ch = data.read();
-                        break;
-                    case L_BRACE:
-                    case L_BRACKET:
-                    case R_BRACKET:
-                    case R_BRACE:
-                    case COLON:
-                    case COMMA:
-                        ch = data.read();
-                        break;
-                    default:
-                        throw new IOException("Unexpected token " + token);
-                }
+    public static <T> T from(final byte[] data, final Class<T> type) throws IOException {
+        return DEFAULT.parse(data, type);
+    }
 
-            }
+    public static <T> T from(final ByteBuffer data, final Class<T> type) throws IOException {
+        return DEFAULT.parse(data, type);
+    }
 
-            void consumeWhitespace() throws IOException {
-                while (Character.isWhitespace(ch)) {
-                    ch = data.read();
-                }
-            }
+    /**
+     * Serialize value, such as a record, a bound class, a collection or a
+     * tree, in the compact form of toString(); the counterpart of
+     * {@link #from(String, Class)}.
+     *
+     * @param value the value
+     * @return its JSON text
+     */
+    public static String toJSON(final Object value) {
+        return JSONWriter.toString(value, 0, -1);
+    }
 
-            JSONObject object() throws IOException {
-                JSONObject top = new JSONObject();
+    /**
+     * Serialize value in the indented form of toString(indent).
+     */
+    public static String toJSON(final Object value, int indent) {
+        return JSONWriter.toString(value, 0, indent);
+    }
 
-                for (;;) {
-                    // Process key.
-                    nextToken();
+    /**
+     * Write value in compact form to out.
+     */
+    public static void writeTo(final Object value, final Appendable out) throws IOException {
+        new JSONWriter(out, -1).value(value, 0).flush();
+    }
 
-                    switch (token) {
-                        case COMMA -> nextToken();
-                        // more objects
-                        case R_BRACE -> {
-                            return top; // all done
-                        }
-                    }
+    /**
+     * Write value in compact form to out as UTF-8. The stream is flushed but
+     * not closed.
+     */
+    public static void writeTo(final Object value, final OutputStream out) throws IOException {
+        new JSONWriter(out, -1).value(value, 0).flush();
+    }
 
-                    if (token != STRING) {
-                        throw new IOException("Expected a key name in quotes but got '" + token + "'.");
-                    }
+    /**
+     * Report every document in data to handler instead of building trees.
+     */
+    public static void parse(final String data, final JSONHandler handler) throws IOException {
+        char[] chars = data.toCharArray();
+        new CharLexer(chars, 0, chars.length).parse(handler);
+    }
 
-                    String key = (String) value;
-                    nextTokenColonCheck();
-                    nextToken();
-
-                    // Process value.
-                    switch (token) {
-                        case TRUE -> top.put(key, true);
-                        case FALSE -> top.put(key, false);
-                        case STRING, NUMBER -> top.put(key, value);
-                        case L_BRACKET -> // []
-                                top.put(key, array());
-                        case L_BRACE -> // {}
-                                top.put(key, object());
-                        case NULL -> top.put(key, null);
-                        default ->
-                            // Should never get here.
-                                throw new IOException("Invalid token: " + token);
-                    }
-                }
-            }
+    public static void parse(final Reader data, final JSONHandler handler) throws IOException {
+        new CharLexer(data).parse(handler);
+    }
 
-            private JSONArray array() throws IOException {
-                JSONArray list = new JSONArray();
-
-                for (;;) {
-                    // grab the next token
-                    nextToken();
-                    switch (token) {
-                        case STRING:
-                        case NUMBER:
-                            list.add(value);
-                            break;
-                        case L_BRACKET: // Embedded array []
-                            list.add(array());
-                            break;
-                        case L_BRACE: // Embedded object {}
-                            list.add(object());
-                            break;
-                        case TRUE:
-                            list.add(true);
-                            break;
-                        case FALSE:
-                            list.add(false);
-                            break;
-                        case NULL:
-                            list.add(null);
-                            break;
-                        case COMMA:
-                            break;
-                        case R_BRACKET:
-                            return list;
-                        default:
-                            throw new IOException("Unexpected token '" + token + "' encountered while processing an array.");
-                    }
-                }
-            }
+    /**
+     * Report every UTF-8 encoded document in data to handler; memory use does
+     * not depend on the size of the input.
+     */
+    public static void parse(final InputStream data, final JSONHandler handler) throws IOException {
+        new ByteLexer(data).parse(handler);
+    }
+
+    /**
+     * Report every UTF-8 encoded document between the buffer's position and
+     * limit to handler.
+     */
+    public static void parse(final ByteBuffer data, final JSONHandler handler) throws IOException {
+        new ByteLexer(data).parse(handler);
+    }
+
+    /**
+     * Report every UTF-8 encoded document in a file to handler, reading it
+     * through a sliding memory mapping, so files larger than the heap take
+     * constant memory.
+     */
+    public static void parse(final Path file, final JSONHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            new MappedLexer(channel).parse(handler);
         }
+    }
 
-        Lexer lexer = new Lexer();
-        // Start with lexer at beginning of data (BOD)
+    /**
+     * Step through a document token by token instead of building a tree.
+     */
+    public static JSONReader reader(final String data) {
+        char[] chars = data.toCharArray();
+        return new JSONReader(new CharLexer(chars, 0, chars.length));
+    }
 
-        T ret;
+    public static JSONReader reader(final Reader data) {
+        return new JSONReader(new CharLexer(data));
+    }
 
-        lexer.nextToken();
-        // Do we have an object or an array?
-        switch (lexer.token) {
-            case L_BRACE -> // {}
-                    ret = (T) lexer.object();
-            case L_BRACKET -> // []
-                    ret = (T) lexer.array();
-            case EOD -> {
-                return null;
-            }
-            default -> throw new IOException("Can't parse JSON document. Must start with '{' or '['.");
-        }
-        return ret;
+    /**
+     * Step through a UTF-8 encoded document token by token.
+     */
+    public static JSONReader reader(final InputStream data) {
+        return new JSONReader(new ByteLexer(data));
+    }
+
+    /**
+     * Step through the UTF-8 encoded document between the buffer's position
+     * and limit token by token.
+     */
+    public static JSONReader reader(final ByteBuffer data) {
+        return new JSONReader(new ByteLexer(data));
+    }
+
+    /**
+     * Step through a UTF-8 encoded file token by token through a memory
+     * mapping. The returned reader must be closed to release the file.
+     */
+    public static JSONReader reader(final Path file) throws IOException {
+        return new JSONReader(new MappedLexer(FileChannel.open(file, StandardOpenOption.READ)));
     }
 
     protected static void _indent(final StringBuilder sb, int numSpaces) {
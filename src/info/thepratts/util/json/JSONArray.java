@@ -23,12 +23,10 @@
  */
 package info.thepratts.util.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.StringJoiner;
-
-import static info.thepratts.util.json.JSON._indent;
-import static info.thepratts.util.json.JSON.escape;
 
 /**
  * This is not thread safe.
@@ -46,37 +44,28 @@ public class JSONArray<T> extends ArrayList<T> {
         super(c);
     }
 
-    protected String _toString(int c, int indent) {
-        if (isEmpty()) {
-            return "[]";
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("[\n");
-
-        forEach(v -> {
-            if (sb.length() > 2) {
-                sb.append(",\n");
-            }
-            _indent(sb, (1 + c) * indent);
+    /**
+     * Returns element i, which must be a number, as a long.
+     *
+     * @param i index of the element
+     * @return the element's long value
+     */
+    public long getLong(int i) {
+        return ((Number) get(i)).longValue();
+    }
 
-            if (v == null) {
-                sb.append("null");
-            } else if (v instanceof String) {
-                sb.append('"').append(escape((String) v)).append('"');
-            } else if (v instanceof JSONObject) {
-                sb.append(((JSONObject) v)._toString(c + 1, indent));
-            } else if (v instanceof JSONArray) {
-                sb.append(((JSONArray<?>) v)._toString(c + 1, indent));
-            } else {
-                sb.append(v);
-            }
-        });
-        sb.append('\n');
-        _indent(sb, c * indent);
-        sb.append(']');
+    /**
+     * Returns element i, which must be a number, as a double.
+     *
+     * @param i index of the element
+     * @return the element's double value
+     */
+    public double getDouble(int i) {
+        return ((Number) get(i)).doubleValue();
+    }
 
-        return sb.toString();
+    protected String _toString(int c, int indent) {
+        return JSONWriter.toString(this, c, indent);
     }
 
     public String toString(int indent) {
@@ -85,16 +74,52 @@ public class JSONArray<T> extends ArrayList<T> {
 
     @Override
     public String toString() {
-        StringJoiner sj = new StringJoiner(",", "[", "]");
-        this.forEach(e -> {
-            if (e == null) {
-                sj.add("null");
-            } else if (e instanceof String) {
-                sj.add("\"" + escape(e.toString()) + "\"");
-            } else {
-                sj.add(e.toString());
-            }
-        });
-        return sj.toString();
+        return JSONWriter.toString(this, 0, -1);
+    }
+
+    /**
+     * Write the compact form of this document, as produced by toString(), to
+     * out. Nothing is buffered beyond a single fixed size chunk.
+     *
+     * @param out where to write
+     * @throws IOException if out does
+     */
+    public void writeTo(Appendable out) throws IOException {
+        new JSONWriter(out, -1).value(this, 0).flush();
+    }
+
+    /**
+     * Write the indented form of this document, as produced by
+     * toString(indent), to out.
+     *
+     * @param out where to write
+     * @param indent spaces per nesting level
+     * @throws IOException if out does
+     */
+    public void writeTo(Appendable out, int indent) throws IOException {
+        new JSONWriter(out, indent).value(this, 0).flush();
+    }
+
+    /**
+     * Write the compact form of this document to out as UTF-8. The stream is
+     * flushed but not closed.
+     *
+     * @param out where to write
+     * @throws IOException if out does
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        new JSONWriter(out, -1).value(this, 0).flush();
+    }
+
+    /**
+     * Write the indented form of this document to out as UTF-8. The stream is
+     * flushed but not closed.
+     *
+     * @param out where to write
+     * @param indent spaces per nesting level
+     * @throws IOException if out does
+     */
+    public void writeTo(OutputStream out, int indent) throws IOException {
+        new JSONWriter(out, indent).value(this, 0).flush();
     }
 }
@@ -0,0 +1,739 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary form of JSONObject / JSONArray trees, for caching parsed
+ * documents and passing them between processes without paying for the text
+ * lexer again.
+ * <pre>
+ * byte[] bytes = JSONBinary.encode(tree);
+ * JSONObject copy = JSONBinary.decode(bytes);
+ * Object price = JSONBinary.get(ByteBuffer.wrap(bytes), "items", 3, "price");
+ * </pre> Decoding gives back an equal tree holding values of the same
+ * classes: Long, Integer, Double, Float, BigInteger, BigDecimal, String and
+ * Boolean, with LongJSONArray and DoubleJSONArray kept primitive. Keys are
+ * written once per document, in order, and shared by every object that uses
+ * them. Every object and array carries a table of the offsets of its values,
+ * so {@link #get(ByteBuffer, Object...)} can binary search its way to one
+ * value and decode only that.
+ * <p>
+ * The layout, little-endian throughout, is
+ * <pre>
+ * document    'J' 'B' version u32:dictionary value
+ * dictionary  varint:count u32:offset* (varint:length utf-8)*
+ * value       tag payload
+ *   null false true    -
+ *   long int           zigzag varint
+ *   double float       IEEE 754 bits
+ *   big integer        varint:length two's complement, big-endian
+ *   big decimal        zigzag varint:scale, then as big integer
+ *   string             varint:length utf-8
+ *   object             varint:count [width u32:length value* (key offset)*]
+ *   array              varint:count [width u32:length value* offset*]
+ *   longs              varint:count zigzag varint*
+ *   doubles            varint:count IEEE 754 bits*
+ * </pre> where keys are sorted by their unsigned UTF-8 bytes and numbered in
+ * that order, an object's table is sorted by key number, offsets count from
+ * the first key or value, and the bracketed part is left out of empty
+ * containers.
+ * Width is the byte size, 1, 2 or 4, of each table entry.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONBinary {
+
+    static final int VERSION = 1;
+
+    static final byte NULL = 0, FALSE = 1, TRUE = 2, LONG = 3, INT = 4,
+            DOUBLE = 5, FLOAT = 6, BIG_INTEGER = 7, BIG_DECIMAL = 8,
+            STRING = 9, OBJECT = 10, ARRAY = 11, LONGS = 12, DOUBLES = 13;
+
+    private static final int HEADER = 7;
+
+    private JSONBinary() {
+    }
+
+    /**
+     * @param tree a JSONObject, JSONArray or single value
+     * @return the binary form of tree
+     * @throws IllegalArgumentException if tree holds something other than
+     * JSON containers, strings, numbers of the classes above, booleans and
+     * nulls
+     */
+    public static byte[] encode(final Object tree) {
+        return new Encoder().document(tree);
+    }
+
+    /**
+     * @param <T> JSONObject or JSONArray, usually
+     * @param data a document made by {@link #encode(Object)}
+     * @return the tree
+     * @throws IOException if data is not such a document
+     */
+    public static <T> T decode(final byte[] data) throws IOException {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param <T> JSONObject or JSONArray, usually
+     * @param data a document made by {@link #encode(Object)}, starting at the
+     * buffer's position; the position is not changed
+     * @return the tree
+     * @throws IOException if data is not such a document
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(final ByteBuffer data) throws IOException {
+        Decoder d = new Decoder(data);
+        try {
+            return (T) d.value(d.root());
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw d.corrupt();
+        }
+    }
+
+    /**
+     * Decode one value of a document, found by path, without decoding the
+     * rest of it.
+     *
+     * @param data a document made by {@link #encode(Object)}, starting at the
+     * buffer's position; the position is not changed
+     * @param path String keys into objects and Integer indices into arrays
+     * @return the value, or null if the path leads nowhere
+     * @throws IOException if data is not such a document
+     */
+    public static Object get(final ByteBuffer data, final Object... path)
+            throws IOException {
+        Decoder d = new Decoder(data);
+        try {
+            return d.get(path);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw d.corrupt();
+        }
+    }
+
+    private static final class Encoder {
+
+        private byte[] buf = new byte[256];
+        private int pos;
+        private final Map<String, Integer> ids = new HashMap<>();
+        // Table entries of the containers being written, innermost last.
+        private long[] entries = new long[64];
+        private int top;
+
+        byte[] document(final Object tree) {
+            put((byte) 'J');
+            put((byte) 'B');
+            put((byte) VERSION);
+            putInt(0);
+            // Number the keys in order first, so the tables can be written
+            // with their final numbers.
+            collect(tree);
+            String[] keys = ids.keySet().toArray(new String[0]);
+            byte[][] names = new byte[keys.length][];
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                names[i] = keys[i].getBytes(UTF_8);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(names[a], names[b]));
+            for (int i = 0; i < order.length; i++) {
+                ids.put(keys[order[i]], i);
+            }
+            value(tree);
+            putInt(3, pos);
+            varint(order.length);
+            ensure(order.length << 2);
+            int table = pos;
+            pos += order.length << 2;
+            for (int i = 0; i < order.length; i++) {
+                putInt(table + (i << 2), pos - table - (order.length << 2));
+                varint(names[order[i]].length);
+                put(names[order[i]]);
+            }
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void collect(final Object v) {
+            if (v instanceof JSONObject) {
+                for (Map.Entry<String, Object> e : ((JSONObject) v).entrySet()) {
+                    ids.putIfAbsent(e.getKey(), 0);
+                    collect(e.getValue());
+                }
+            } else if (v instanceof JSONArray && !(v instanceof PrimitiveJSONArray
+                    && ((PrimitiveJSONArray) v).primitive())) {
+                for (Object e : (JSONArray<?>) v) {
+                    collect(e);
+                }
+            }
+        }
+
+        private void value(final Object v) {
+            if (v == null) {
+                put(NULL);
+            } else if (v instanceof String) {
+                put(STRING);
+                byte[] b = ((String) v).getBytes(UTF_8);
+                varint(b.length);
+                put(b);
+            } else if (v instanceof Boolean) {
+                put((Boolean) v ? TRUE : FALSE);
+            } else if (v instanceof Long) {
+                put(LONG);
+                zigzag((Long) v);
+            } else if (v instanceof Double) {
+                put(DOUBLE);
+                putLong(Double.doubleToRawLongBits((Double) v));
+            } else if (v instanceof JSONObject) {
+                object((JSONObject) v);
+            } else if (v instanceof LongJSONArray
+                    && ((LongJSONArray) v).primitive()) {
+                LongJSONArray a = (LongJSONArray) v;
+                put(LONGS);
+                varint(a.size());
+                for (int i = 0; i < a.size(); i++) {
+                    zigzag(a.getLong(i));
+                }
+            } else if (v instanceof DoubleJSONArray
+                    && ((DoubleJSONArray) v).primitive()) {
+                DoubleJSONArray a = (DoubleJSONArray) v;
+                put(DOUBLES);
+                varint(a.size());
+                for (int i = 0; i < a.size(); i++) {
+                    putLong(Double.doubleToRawLongBits(a.getDouble(i)));
+                }
+            } else if (v instanceof JSONArray) {
+                array((JSONArray<?>) v);
+            } else if (v instanceof Integer) {
+                put(INT);
+                zigzag((Integer) v);
+            } else if (v instanceof Float) {
+                put(FLOAT);
+                putInt(Float.floatToRawIntBits((Float) v));
+            } else if (v instanceof BigInteger) {
+                put(BIG_INTEGER);
+                big((BigInteger) v);
+            } else if (v instanceof BigDecimal) {
+                put(BIG_DECIMAL);
+                zigzag(((BigDecimal) v).scale());
+                big(((BigDecimal) v).unscaledValue());
+            } else {
+                throw new IllegalArgumentException("Can't encode a "
+                        + v.getClass().getName() + ".");
+            }
+        }
+
+        private void object(final JSONObject o) {
+            put(OBJECT);
+            varint(o.size());
+            if (o.isEmpty()) {
+                return;
+            }
+            ensure(5);
+            int header = pos;
+            pos += 5;
+            int values = pos, base = top;
+            for (Map.Entry<String, Object> e : o.entrySet()) {
+                int id = ids.get(e.getKey());
+                int offset = pos - values;
+                value(e.getValue());
+                push((long) id << 32 | offset);
+            }
+            Arrays.sort(entries, base, top);
+            int width = width(values, header,
+                    Math.max(pos - values, (int) (entries[top - 1] >>> 32)));
+            for (int i = base; i < top; i++) {
+                putWidth(width, (int) (entries[i] >>> 32));
+                putWidth(width, (int) entries[i]);
+            }
+            top = base;
+        }
+
+        private void array(final JSONArray<?> a) {
+            put(ARRAY);
+            varint(a.size());
+            if (a.isEmpty()) {
+                return;
+            }
+            ensure(5);
+            int header = pos;
+            pos += 5;
+            int values = pos, base = top;
+            for (Object v : a) {
+                int offset = pos - values;
+                value(v);
+                push(offset);
+            }
+            int width = width(values, header, pos - values);
+            for (int i = base; i < top; i++) {
+                putWidth(width, (int) entries[i]);
+            }
+            top = base;
+        }
+
+        /**
+         * Fill in a container's header, now its values are written.
+         */
+        private int width(final int values, final int header, final int max) {
+            int width = max <= 0xFF ? 1 : max <= 0xFFFF ? 2 : 4;
+            buf[header] = (byte) width;
+            putInt(header + 1, pos - values);
+            return width;
+        }
+
+        private void push(final long entry) {
+            if (top == entries.length) {
+                entries = Arrays.copyOf(entries, top * 2);
+            }
+            entries[top++] = entry;
+        }
+
+        private void big(final BigInteger v) {
+            byte[] b = v.toByteArray();
+            varint(b.length);
+            put(b);
+        }
+
+        private void zigzag(final long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        private void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) (v | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void putWidth(final int width, final int v) {
+            ensure(4);
+            for (int i = 0; i < width; i++) {
+                buf[pos++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private void putLong(final long v) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[pos++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private void putInt(final int v) {
+            ensure(4);
+            pos += 4;
+            putInt(pos - 4, v);
+        }
+
+        private void putInt(final int at, final int v) {
+            for (int i = 0; i < 4; i++) {
+                buf[at + i] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private void put(final byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        private void put(final byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        private void ensure(final int n) {
+            if (pos + n + 4 > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n + 4));
+            }
+        }
+    }
+
+    /**
+     * Reads one document in place. Positions are absolute indices into the
+     * buffer. Subclasses may build something other than JSONObject and
+     * JSONArray for the containers met; see {@link JSONStore}.
+     */
+    static class Decoder {
+
+        final ByteBuffer data;
+        final int start;
+        private String[] keys;
+        // Where the dictionary's offsets and keys start, once looked at.
+        private int keyTable = -1, keyData;
+        // Set by varint(...) and header(...).
+        private int next, width, length, values;
+        private byte[] scratch;
+
+        Decoder(final ByteBuffer data) throws IOException {
+            this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.start = data.position();
+            if (data.remaining() < HEADER
+                    || this.data.get(start) != 'J'
+                    || this.data.get(start + 1) != 'B') {
+                throw new IOException("Not a binary JSON document.");
+            }
+            if (this.data.get(start + 2) != VERSION) {
+                throw new IOException("Unsupported binary JSON version "
+                        + this.data.get(start + 2) + ".");
+            }
+        }
+
+        /**
+         * A plain decoder of the same document, sharing its keys.
+         */
+        Decoder(final Decoder other) {
+            this.data = other.data;
+            this.start = other.start;
+            this.keys = other.keys;
+            this.keyTable = other.keyTable;
+            this.keyData = other.keyData;
+        }
+
+        IOException corrupt() {
+            return new IOException("Corrupt binary JSON document.");
+        }
+
+        /**
+         * @return the position of the document's value
+         */
+        int root() {
+            return start + HEADER;
+        }
+
+        private void dictionary() {
+            if (keyTable < 0) {
+                int n = (int) varint(start + data.getInt(start + 3));
+                keys = new String[n];
+                keyTable = next;
+                keyData = next + (n << 2);
+            }
+        }
+
+        /**
+         * @return key number id, decoded once
+         */
+        private String key(final int id) {
+            dictionary();
+            String k = keys[id];
+            if (k == null) {
+                int length = (int) varint(keyData + data.getInt(keyTable + (id << 2)));
+                keys[id] = k = string(next, length);
+            }
+            return k;
+        }
+
+        /**
+         * @return the count of the container at at
+         */
+        int count(final int at) {
+            return (int) varint(at + 1);
+        }
+
+        /**
+         * Read the header of the container at at into width, length and
+         * values, if it has one.
+         *
+         * @return its count
+         */
+        private int header(final int at) {
+            int n = count(at);
+            if (n > 0) {
+                width = data.get(next);
+                length = data.getInt(next + 1);
+                values = next + 5;
+            }
+            return n;
+        }
+
+        /**
+         * @return the position of key's value in the object at at, or -1
+         */
+        int find(final int at, final String key) {
+            int n = header(at);
+            if (n == 0) {
+                return -1;
+            }
+            int id = id(key), low = 0, high = n - 1;
+            int table = values + length, entry = width << 1;
+            while (low <= high && id >= 0) {
+                int mid = (low + high) >>> 1;
+                int k = width(table + mid * entry, width);
+                if (k < id) {
+                    low = mid + 1;
+                } else if (k > id) {
+                    high = mid - 1;
+                } else {
+                    return values + offset(table + mid * entry + width);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the position of element i of the array at at, or -1
+         */
+        int element(final int at, final int i) {
+            int n = header(at);
+            if (i < 0 || i >= n) {
+                return -1;
+            }
+            return values + offset(values + length + i * width);
+        }
+
+        /**
+         * @return the key of entry i, in table order, of the object at at
+         */
+        String key(final int at, final int i) {
+            header(at);
+            return key(width(values + length + i * (width << 1), width));
+        }
+
+        /**
+         * @return the position of the value of entry i, in table order, of
+         * the object at at
+         */
+        int entry(final int at, final int i) {
+            header(at);
+            return values + offset(values + length + i * (width << 1) + width);
+        }
+
+        Object value(final int at) throws IOException {
+            switch (data.get(at)) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case LONG:
+                    return zigzag(at + 1);
+                case INT:
+                    return (int) zigzag(at + 1);
+                case DOUBLE:
+                    return data.getDouble(at + 1);
+                case FLOAT:
+                    return data.getFloat(at + 1);
+                case BIG_INTEGER:
+                    return big(at + 1);
+                case BIG_DECIMAL:
+                    int scale = (int) zigzag(at + 1);
+                    return new BigDecimal(big(next), scale);
+                case STRING: {
+                    int length = (int) varint(at + 1);
+                    return string(next, length);
+                }
+                case OBJECT:
+                    return object(at);
+                case ARRAY:
+                    return array(at);
+                case LONGS: {
+                    int n = count(at);
+                    long[] a = new long[n];
+                    for (int i = 0; i < n; i++) {
+                        a[i] = zigzag(next);
+                    }
+                    return new LongJSONArray(a, n);
+                }
+                case DOUBLES: {
+                    int n = count(at);
+                    double[] a = new double[n];
+                    for (int i = 0; i < n; i++) {
+                        a[i] = data.getDouble(next + (i << 3));
+                    }
+                    return new DoubleJSONArray(a, n);
+                }
+                default:
+                    throw corrupt();
+            }
+        }
+
+        JSONObject object(final int at) throws IOException {
+            JSONObject o = new JSONObject();
+            int n = header(at);
+            int w = width, v = values, l = length, table = v + l;
+            for (int i = 0; i < n; i++, table += w << 1) {
+                o.put(key(width(table, w)), value(v + offset(table + w, w, l)));
+            }
+            return o;
+        }
+
+        JSONArray<Object> array(final int at) throws IOException {
+            JSONArray<Object> a = new JSONArray<>();
+            int n = header(at);
+            a.ensureCapacity(n);
+            int w = width, v = values, l = length, table = v + l;
+            for (int i = 0; i < n; i++, table += w) {
+                a.add(value(v + offset(table, w, l)));
+            }
+            return a;
+        }
+
+        Object get(final Object... path) throws IOException {
+            int at = root();
+            for (int s = 0; s < path.length; s++) {
+                byte tag = data.get(at);
+                if (tag == OBJECT && path[s] instanceof String) {
+                    at = find(at, (String) path[s]);
+                } else if (tag == ARRAY && path[s] instanceof Integer) {
+                    at = element(at, (Integer) path[s]);
+                } else if ((tag == LONGS || tag == DOUBLES)
+                        && path[s] instanceof Integer && s == path.length - 1) {
+                    int i = (Integer) path[s], n = count(at);
+                    if (i < 0 || i >= n) {
+                        return null;
+                    }
+                    if (tag == DOUBLES) {
+                        return data.getDouble(next + (i << 3));
+                    }
+                    while (i-- > 0) {
+                        varint(next);
+                    }
+                    return zigzag(next);
+                } else {
+                    return null;
+                }
+                if (at < 0) {
+                    return null;
+                }
+            }
+            return value(at);
+        }
+
+        /**
+         * @return the number of key in the dictionary, or -1
+         */
+        private int id(final String key) {
+            dictionary();
+            byte[] k = key.getBytes(UTF_8);
+            int low = 0, high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(keyData + data.getInt(keyTable + (mid << 2)), k);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Compare the dictionary entry at at with the UTF-8 bytes b.
+         */
+        private int compare(final int at, final byte[] b) {
+            int length = (int) varint(at), n = Math.min(length, b.length);
+            for (int i = 0; i < n; i++) {
+                int c = Byte.compareUnsigned(data.get(next + i), b[i]);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return length - b.length;
+        }
+
+        private int offset(final int at) {
+            return offset(at, width, length);
+        }
+
+        /**
+         * Read a table entry that must be an offset into length bytes of
+         * values; checked so that corrupt data can't send decoding backwards.
+         */
+        private int offset(final int at, final int width, final int length) {
+            int offset = width(at, width);
+            if (offset < 0 || offset >= length) {
+                throw new IllegalArgumentException();
+            }
+            return offset;
+        }
+
+        private int width(final int at, final int width) {
+            switch (width) {
+                case 1:
+                    return data.get(at) & 0xFF;
+                case 2:
+                    return data.getShort(at) & 0xFFFF;
+                default:
+                    return data.getInt(at);
+            }
+        }
+
+        private BigInteger big(final int at) {
+            int length = (int) varint(at);
+            byte[] b = new byte[length];
+            data.get(next, b);
+            next += length;
+            return new BigInteger(b);
+        }
+
+        private String string(final int at, final int length) {
+            if (data.hasArray()) {
+                return new String(data.array(), data.arrayOffset() + at,
+                        length, UTF_8);
+            }
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.max(length, 64)];
+            }
+            data.get(at, scratch, 0, length);
+            return new String(scratch, 0, length, UTF_8);
+        }
+
+        private long zigzag(final int at) {
+            long v = varint(at);
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private long varint(int at) {
+            long v = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = data.get(at++);
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    next = at;
+                    return v;
+                }
+                if (shift > 56) {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+    }
+}
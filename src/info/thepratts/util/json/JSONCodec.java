@@ -0,0 +1,337 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.StringJoiner;
+import java.util.WeakHashMap;
+
+import info.thepratts.util.json.Binding.Kind;
+import info.thepratts.util.json.JSONReader.Token;
+
+/**
+ * Reads and writes one type without reflection. Codecs are generated by
+ * {@link JSONCodecProcessor} for types marked {@link JSONType} and listed
+ * under <code>META-INF/services</code>, where they are found through
+ * {@link ServiceLoader} the first time their type is bound; from then on
+ * {@link JSON#from(String, Class)}, {@link JSONReader#read(Class)} and
+ * {@link JSON#toJSON(Object)} use them, as does serializing them inside a
+ * tree or another bound type. Hand written codecs work the same way.
+ * <p>
+ * The protected methods are for the generated code.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ * @param <T> the type
+ */
+public abstract class JSONCodec<T> {
+
+    // The codecs each class loader can see, by type.
+    private static final Map<ClassLoader, Map<Class<?>, JSONCodec<?>>> LOADED = new WeakHashMap<>();
+
+    private final Class<T> type;
+
+    protected JSONCodec(final Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the type this codec reads and writes
+     */
+    public final Class<T> type() {
+        return type;
+    }
+
+    /**
+     * Read the value at the reader's current token, leaving the reader on the
+     * value's last token.
+     *
+     * @param in the reader
+     * @return the value, or null for a JSON null
+     * @throws IOException if the source fails, the document is bad or it
+     * does not fit the type
+     */
+    public abstract T read(JSONReader in) throws IOException;
+
+    /**
+     * Write value, which is not null.
+     *
+     * @param out where to write
+     * @param value the value
+     * @throws IOException if out does
+     */
+    public abstract void write(Output out, T value) throws IOException;
+
+    /**
+     * @return the codec registered for type, or null
+     */
+    static synchronized JSONCodec<?> find(final Class<?> type) {
+        ClassLoader loader = type.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        Map<Class<?>, JSONCodec<?>> codecs = LOADED.get(loader);
+        if (codecs == null) {
+            codecs = new HashMap<>();
+            for (JSONCodec<?> c : ServiceLoader.load(JSONCodec.class, loader)) {
+                codecs.putIfAbsent(c.type(), c);
+            }
+            LOADED.put(loader, codecs);
+        }
+        return codecs.get(type);
+    }
+
+    /**
+     * @param in the reader
+     * @param what the type being read, for messages
+     * @return true on START_OBJECT, false on NULL
+     * @throws IOException on anything else
+     */
+    protected static boolean beginObject(final JSONReader in, final String what) throws IOException {
+        if (in.currentToken() == Token.START_OBJECT) {
+            return true;
+        }
+        if (in.currentToken() == Token.NULL) {
+            return false;
+        }
+        throw new IOException("Expected an object for " + what + " but got " + in.currentToken() + ".");
+    }
+
+    protected static boolean readBoolean(final JSONReader in, final String where) throws IOException {
+        return Kind.BOOLEAN.read(in, where) != 0;
+    }
+
+    protected static char readChar(final JSONReader in, final String where) throws IOException {
+        return (char) Kind.CHAR.read(in, where);
+    }
+
+    protected static byte readByte(final JSONReader in, final String where) throws IOException {
+        return (byte) Kind.BYTE.read(in, where);
+    }
+
+    protected static short readShort(final JSONReader in, final String where) throws IOException {
+        return (short) Kind.SHORT.read(in, where);
+    }
+
+    protected static int readInt(final JSONReader in, final String where) throws IOException {
+        return (int) Kind.INT.read(in, where);
+    }
+
+    protected static long readLong(final JSONReader in, final String where) throws IOException {
+        return Kind.LONG.read(in, where);
+    }
+
+    protected static float readFloat(final JSONReader in, final String where) throws IOException {
+        return (float) Double.longBitsToDouble(Kind.FLOAT.read(in, where));
+    }
+
+    protected static double readDouble(final JSONReader in, final String where) throws IOException {
+        return Double.longBitsToDouble(Kind.DOUBLE.read(in, where));
+    }
+
+    protected static String readString(final JSONReader in, final String where) throws IOException {
+        if (in.currentToken() == Token.NULL) {
+            return null;
+        }
+        if (in.currentToken() != Token.STRING) {
+            throw new IOException("Expected a string for " + where + " but got " + in.currentToken() + ".");
+        }
+        return in.getString();
+    }
+
+    /**
+     * @return how to read and write values of type, for types the generated
+     * code does not handle itself
+     */
+    protected static <V> Delegate<V> delegate(final Type type) {
+        return new Delegate<>(type);
+    }
+
+    protected static Type parameterized(final Class<?> raw, final Type... arguments) {
+        return new Parameterized(raw, arguments);
+    }
+
+    protected static Type arrayOf(final Type component) {
+        return (GenericArrayType) () -> component;
+    }
+
+    /**
+     * What a codec writes to. Keys are given as constants with their quotes
+     * and colon, already escaped.
+     */
+    public static final class Output {
+
+        private final JSONWriter w;
+        private int depth;
+
+        Output(final JSONWriter w, int depth) {
+            this.w = w;
+            this.depth = depth;
+        }
+
+        public void startObject() throws IOException {
+            w.write('{');
+            depth++;
+        }
+
+        /**
+         * @param prefix the quoted key and colon, such as
+         * <code>,"id":</code>, with a leading comma unless it is the first
+         */
+        public void key(final String prefix) throws IOException {
+            if (prefix.charAt(0) == ',') {
+                w.write(',');
+                w.newline(depth);
+                w.write(prefix, 1, prefix.length());
+            } else {
+                w.newline(depth);
+                w.write(prefix);
+            }
+        }
+
+        /**
+         * End an object with at least one key.
+         */
+        public void endObject() throws IOException {
+            w.newline(--depth);
+            w.write('}');
+        }
+
+        /**
+         * Write text as it is, such as <code>{}</code>.
+         */
+        public void raw(final String text) throws IOException {
+            w.write(text);
+        }
+
+        public void value(final String s) throws IOException {
+            if (s == null) {
+                w.write("null");
+            } else {
+                w.string(s);
+            }
+        }
+
+        public void value(final long v) throws IOException {
+            w.write(v);
+        }
+
+        public void value(final double v) throws IOException {
+            w.write(Double.toString(v));
+        }
+
+        public void value(final float v) throws IOException {
+            w.write(Float.toString(v));
+        }
+
+        public void value(final boolean v) throws IOException {
+            w.write(v ? "true" : "false");
+        }
+
+        public void value(final char v) throws IOException {
+            w.string(String.valueOf(v));
+        }
+    }
+
+    /**
+     * Reads and writes values of a type the generated code leaves to the
+     * library, such as a collection or another record. How is worked out on
+     * first use.
+     *
+     * @param <V> the type
+     */
+    public static final class Delegate<V> {
+
+        private final Type type;
+        private Binding binding;
+
+        Delegate(final Type type) {
+            this.type = type;
+        }
+
+        private Binding binding() {
+            if (binding == null) {
+                binding = Binding.of(type);
+            }
+            return binding;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V read(final JSONReader in) throws IOException {
+            return (V) binding().read(in);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void write(final Output out, final V value) throws IOException {
+            Binding b = binding();
+            if (value == null) {
+                out.w.write("null");
+            } else if (b instanceof Binding.Generated g) {
+                ((JSONCodec<Object>) g.codec).write(out, value);
+            } else {
+                b.write(out.w, value, out.depth);
+            }
+        }
+    }
+
+    private static final class Parameterized implements ParameterizedType {
+
+        private final Class<?> raw;
+        private final Type[] arguments;
+
+        Parameterized(final Class<?> raw, final Type[] arguments) {
+            this.raw = raw;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return arguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return raw;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return raw.getDeclaringClass();
+        }
+
+        @Override
+        public String getTypeName() {
+            StringJoiner name = new StringJoiner(", ", raw.getTypeName() + "<", ">");
+            for (Type a : arguments) {
+                name.add(a.getTypeName());
+            }
+            return name.toString();
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@link JSONCodec} for each type marked {@link JSONType}: a
+ * public class in the same package named after the type, with nested names
+ * joined by '_', and "JSONCodec" appended. Its reader dispatches on keys with
+ * a switch over string constants, which javac compiles to a switch on their
+ * precomputed hashes, and calls straight into constructors and fields; its
+ * writer emits each key as one pre-escaped constant. Values of other types,
+ * such as collections, go through the library's own binding.
+ * <p>
+ * The codecs are listed in
+ * <code>META-INF/services/info.thepratts.util.json.JSONCodec</code>, so they
+ * are found without scanning the class path; codecs already listed in the
+ * output stay listed while their types are still marked, so incremental
+ * builds that recompile only some types keep the rest. The processor itself is listed
+ * in <code>META-INF/services/javax.annotation.processing.Processor</code>, so
+ * javac runs it whenever this library is on the class path (or the processor
+ * path).
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONCodecProcessor extends AbstractProcessor {
+
+    static final String SERVICES = "META-INF/services/" + JSONCodec.class.getName();
+
+    private final Set<String> codecs = new TreeSet<>();
+
+    /**
+     * Every compilation, even one without marked types, may have to update
+     * the list of codecs; nothing is claimed.
+     */
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (Element e : round.getElementsAnnotatedWith(JSONType.class)) {
+            try {
+                generate(e);
+            } catch (Invalid ex) {
+                error(ex.getMessage(), ex.element);
+            } catch (IOException ex) {
+                error("Can't write the codec for " + e + ": " + ex, e);
+            }
+        }
+        if (round.processingOver() && !round.errorRaised()) {
+            services();
+        }
+        return false;
+    }
+
+    /**
+     * List this compilation's codecs along with those an earlier compilation
+     * into the same output listed, so that incremental builds keep them,
+     * less any whose type is gone or no longer marked.
+     */
+    private void services() {
+        Set<String> listed = new TreeSet<>();
+        try {
+            FileObject old = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+            try (BufferedReader r = new BufferedReader(old.openReader(true))) {
+                for (String line; (line = r.readLine()) != null;) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        listed.add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // None yet.
+        }
+        Set<String> all = new TreeSet<>(codecs);
+        for (String c : listed) {
+            if (current(c)) {
+                all.add(c);
+            }
+        }
+        if (all.equals(listed)) {
+            return;
+        }
+        try (Writer w = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES).openWriter()) {
+            for (String c : all) {
+                w.write(c);
+                w.write('\n');
+            }
+        } catch (IOException ex) {
+            error("Can't write " + SERVICES + ": " + ex, null);
+        }
+    }
+
+    /**
+     * @return true if the codec named is still there, for a type still
+     * marked {@link JSONType}
+     */
+    private boolean current(String codec) {
+        TypeElement c = processingEnv.getElementUtils().getTypeElement(codec);
+        if (c == null || !(c.getSuperclass() instanceof DeclaredType s) || s.getTypeArguments().size() != 1) {
+            return false;
+        }
+        TypeMirror t = s.getTypeArguments().get(0);
+        return t.getKind() == TypeKind.DECLARED && ((DeclaredType) t).asElement().getAnnotation(JSONType.class) != null;
+    }
+
+    private void error(String message, Element e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+
+    private static final class Invalid extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final Element element;
+
+        Invalid(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    /**
+     * A record component or field: how to get it from "v" and, for a field,
+     * how to set it on "bean".
+     */
+    private static final class Property {
+
+        final String name;
+        final TypeMirror type;
+        final String get;
+        final String set;
+
+        Property(String name, TypeMirror type, String get, String set) {
+            this.name = name;
+            this.type = type;
+            this.get = get;
+            this.set = set;
+        }
+    }
+
+    private void generate(Element e) throws Invalid, IOException {
+        if (e.getKind() != ElementKind.RECORD && e.getKind() != ElementKind.CLASS) {
+            throw new Invalid(e, "@JSONType applies only to records and classes.");
+        }
+        TypeElement type = (TypeElement) e;
+        check(type);
+        boolean record = type.getKind() == ElementKind.RECORD;
+        List<Property> properties = record ? components(type) : fields(type);
+
+        String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String simple = codecName(type);
+        String name = pkg.isEmpty() ? simple : pkg + "." + simple;
+        String t = type.getQualifiedName().toString();
+        String what = type.getSimpleName().toString();
+
+        StringBuilder src = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            src.append("package ").append(pkg).append(";\n\n");
+        }
+        src.append("@javax.annotation.processing.Generated(\"").append(JSONCodecProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(simple).append(" extends info.thepratts.util.json.JSONCodec<").append(t).append("> {\n\n");
+
+        // Delegates for the types left to the library.
+        Map<Property, String> delegates = new LinkedHashMap<>();
+        for (Property p : properties) {
+            if (!p.type.getKind().isPrimitive() && !isString(p.type)) {
+                String d = "D" + delegates.size();
+                delegates.put(p, d);
+                src.append("    private static final Delegate<").append(p.type).append("> ").append(d)
+                        .append(" = delegate(").append(typeExpression(p.type)).append(");\n");
+            }
+        }
+        if (!delegates.isEmpty()) {
+            src.append('\n');
+        }
+
+        src.append("    public ").append(simple).append("() {\n")
+                .append("        super(").append(t).append(".class);\n")
+                .append("    }\n\n");
+
+        src.append("    @Override\n")
+                .append("    public ").append(t).append(" read(info.thepratts.util.json.JSONReader in) throws java.io.IOException {\n")
+                .append("        if (!beginObject(in, ").append(literal(what)).append(")) {\n")
+                .append("            return null;\n")
+                .append("        }\n");
+        if (record) {
+            for (int i = 0; i < properties.size(); i++) {
+                TypeMirror pt = properties.get(i).type;
+                src.append("        ").append(pt).append(" p").append(i).append(" = ").append(initial(pt)).append(";\n");
+            }
+        } else {
+            src.append("        ").append(t).append(" bean = new ").append(t).append("();\n");
+        }
+        src.append("        while (in.nextToken() == info.thepratts.util.json.JSONReader.Token.KEY) {\n")
+                .append("            switch (in.getString()) {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property p = properties.get(i);
+            String where = literal("'" + p.name + "' of " + what);
+            String read = delegates.containsKey(p) ? delegates.get(p) + ".read(in)" : "read" + reader(p.type) + "(in, " + where + ")";
+            src.append("                case ").append(literal(p.name)).append(":\n")
+                    .append("                    in.nextToken();\n")
+                    .append("                    ").append(record ? "p" + i : p.set).append(" = ").append(read).append(";\n")
+                    .append("                    break;\n");
+        }
+        src.append("                default:\n")
+                .append("                    in.nextToken();\n")
+                .append("                    in.skipValue();\n")
+                .append("            }\n")
+                .append("        }\n");
+        if (record) {
+            src.append("        return new ").append(t).append('(');
+            for (int i = 0; i < properties.size(); i++) {
+                src.append(i > 0 ? ", p" : "p").append(i);
+            }
+            src.append(");\n");
+        } else {
+            src.append("        return bean;\n");
+        }
+        src.append("    }\n\n");
+
+        src.append("    @Override\n")
+                .append("    public void write(Output out, ").append(t).append(" v) throws java.io.IOException {\n");
+        if (properties.isEmpty()) {
+            src.append("        out.raw(\"{}\");\n");
+        } else {
+            src.append("        out.startObject();\n");
+            for (int i = 0; i < properties.size(); i++) {
+                Property p = properties.get(i);
+                String key = (i > 0 ? "," : "") + '"' + JSON.escape(p.name) + "\":";
+                src.append("        out.key(").append(literal(key)).append(");\n");
+                if (delegates.containsKey(p)) {
+                    src.append("        ").append(delegates.get(p)).append(".write(out, ").append(p.get).append(");\n");
+                } else {
+                    src.append("        out.value(").append(p.get).append(");\n");
+                }
+            }
+            src.append("        out.endObject();\n");
+        }
+        src.append("    }\n")
+                .append("}\n");
+
+        try (Writer w = processingEnv.getFiler().createSourceFile(name, type).openWriter()) {
+            w.write(src.toString());
+        }
+        codecs.add(name);
+    }
+
+    private void check(TypeElement type) throws Invalid {
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new Invalid(type, "A @JSONType can't be generic.");
+        }
+        for (Element e = type; e instanceof TypeElement t; e = e.getEnclosingElement()) {
+            if (t.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new Invalid(type, "A @JSONType and the types it is nested in must not be private.");
+            }
+            if (t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS
+                    || (t.getNestingKind() == NestingKind.MEMBER && t.getKind() == ElementKind.CLASS
+                    && !t.getModifiers().contains(Modifier.STATIC))) {
+                throw new Invalid(type, "A @JSONType can't be an inner, local or anonymous class.");
+            }
+        }
+        if (type.getKind() == ElementKind.CLASS) {
+            if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+                throw new Invalid(type, "A @JSONType can't be abstract.");
+            }
+            boolean constructor = false;
+            for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                constructor |= c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE);
+            }
+            if (!constructor) {
+                throw new Invalid(type, "A @JSONType class needs a non-private no-argument constructor.");
+            }
+        }
+    }
+
+    private List<Property> components(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        for (RecordComponentElement c : type.getRecordComponents()) {
+            String name = c.getSimpleName().toString();
+            properties.add(new Property(name, c.asType(), "v." + name + "()", null));
+        }
+        return properties;
+    }
+
+    /**
+     * The fields of type and its superclasses, outermost first, as
+     * reflection would bind them.
+     */
+    private List<Property> fields(TypeElement type) throws Invalid {
+        List<TypeElement> lineage = new ArrayList<>();
+        for (TypeElement c = type; c != null && !c.getQualifiedName().contentEquals("java.lang.Object");) {
+            lineage.add(0, c);
+            TypeMirror s = c.getSuperclass();
+            c = s.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) s).asElement() : null;
+        }
+        Map<String, Property> properties = new LinkedHashMap<>();
+        for (TypeElement c : lineage) {
+            boolean samePackage = processingEnv.getElementUtils().getPackageOf(c).equals(processingEnv.getElementUtils().getPackageOf(type));
+            for (VariableElement f : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                Set<Modifier> m = f.getModifiers();
+                if (m.contains(Modifier.STATIC) || m.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                if (m.contains(Modifier.PRIVATE) || m.contains(Modifier.FINAL) || !(samePackage || m.contains(Modifier.PUBLIC))) {
+                    throw new Invalid(f, "Fields bound by a @JSONType codec must be visible to it and not final; make "
+                            + f.getSimpleName() + " package-private or transient.");
+                }
+                String name = f.getSimpleName().toString();
+                TypeMirror t = processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), f);
+                properties.put(name, new Property(name, t, "v." + name, "bean." + name));
+            }
+        }
+        return new ArrayList<>(properties.values());
+    }
+
+    private static String codecName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement t; e = e.getEnclosingElement()) {
+            name.insert(0, '_').insert(0, t.getSimpleName());
+        }
+        return name.append("JSONCodec").toString();
+    }
+
+    private static boolean isString(TypeMirror t) {
+        return t.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) t).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    /**
+     * @return the JSONCodec read method for t, less "read"
+     */
+    private static String reader(TypeMirror t) {
+        switch (t.getKind()) {
+            case BOOLEAN:
+                return "Boolean";
+            case CHAR:
+                return "Char";
+            case BYTE:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case FLOAT:
+                return "Float";
+            case DOUBLE:
+                return "Double";
+            default:
+                return "String";
+        }
+    }
+
+    private static String initial(TypeMirror t) {
+        switch (t.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "(char) 0";
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return "0";
+            default:
+                return "null";
+        }
+    }
+
+    /**
+     * @return Java source for a java.lang.reflect.Type equal to t
+     */
+    private String typeExpression(TypeMirror t) {
+        switch (t.getKind()) {
+            case DECLARED -> {
+                List<? extends TypeMirror> arguments = ((DeclaredType) t).getTypeArguments();
+                String raw = processingEnv.getTypeUtils().erasure(t) + ".class";
+                if (arguments.isEmpty()) {
+                    return raw;
+                }
+                StringBuilder sb = new StringBuilder("parameterized(").append(raw);
+                for (TypeMirror a : arguments) {
+                    sb.append(", ").append(typeExpression(a));
+                }
+                return sb.append(')').toString();
+            }
+            case ARRAY -> {
+                TypeMirror component = ((ArrayType) t).getComponentType();
+                if (component.getKind() == TypeKind.DECLARED && !((DeclaredType) component).getTypeArguments().isEmpty()) {
+                    return "arrayOf(" + typeExpression(component) + ")";
+                }
+                return processingEnv.getTypeUtils().erasure(t) + ".class";
+            }
+            case WILDCARD -> {
+                TypeMirror bound = ((WildcardType) t).getExtendsBound();
+                return bound == null ? "java.lang.Object.class" : typeExpression(bound);
+            }
+            default -> {
+                return processingEnv.getTypeUtils().erasure(t) + ".class";
+            }
+        }
+    }
+
+    /**
+     * @return s as a Java string literal, non-ASCII characters escaped
+     */
+    private static String literal(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c >= 0x7f) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
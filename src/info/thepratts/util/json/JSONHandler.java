@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+
+/**
+ * Receives a document as a sequence of callbacks, in document order, while
+ * it is being lexed; nothing is kept once a callback returns, so documents of
+ * any size can be processed in constant memory. Numbers that fit a long or a
+ * double arrive unboxed. Every method does nothing by default, so a handler
+ * only overrides what it needs.
+ * <pre>
+ * JSON.parse(Paths.get("huge.json"), new JSONHandler() {
+ *     public void value(double d) {
+ *         sum += d;
+ *     }
+ * });
+ * </pre> The tree builder behind {@link JSON#from(String)} is itself one of
+ * these.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public interface JSONHandler {
+
+    default void startObject() throws IOException {
+    }
+
+    /**
+     * The key of the next value in the current object.
+     */
+    default void key(String key) throws IOException {
+    }
+
+    default void endObject() throws IOException {
+    }
+
+    default void startArray() throws IOException {
+    }
+
+    default void endArray() throws IOException {
+    }
+
+    default void value(String value) throws IOException {
+    }
+
+    /**
+     * An integral number that fits a long.
+     */
+    default void value(long value) throws IOException {
+    }
+
+    /**
+     * A decimal number that fits a double.
+     */
+    default void value(double value) throws IOException {
+    }
+
+    /**
+     * A number too large for a long or outside the range of a double: a
+     * BigInteger or a BigDecimal.
+     */
+    default void value(Number value) throws IOException {
+    }
+
+    default void value(boolean value) throws IOException {
+    }
+
+    default void nullValue() throws IOException {
+    }
+}
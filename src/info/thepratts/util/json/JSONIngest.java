@@ -0,0 +1,393 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Parses large inputs on many threads. The source is cut into chunks, each
+ * chunk is parsed as a task on an {@link Executor}, and the results are
+ * handed to the caller's action on the calling thread, either in source order
+ * or in whatever order the chunks finish.
+ * <p>
+ * Two shapes of input are supported. Newline delimited JSON (NDJSON) is cut
+ * at newlines: records must not span lines, and since a raw newline can only
+ * appear between records, every newline is a safe place to cut. A single
+ * huge top level array is cut between elements, found by walking a
+ * structural index of the document rather than every byte.
+ * <p>
+ * At most {@link #maxChunksInFlight(int)} chunks are read ahead of the
+ * action, which bounds memory no matter how slow the action is.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONIngest {
+
+    static final int CHUNK_SIZE = 1 << 17;
+
+    private final JSONParser parser;
+    private final Executor executor;
+    private int chunkSize = CHUNK_SIZE;
+    private int maxChunksInFlight = 2 * ForkJoinPool.getCommonPoolParallelism();
+    private boolean ordered = true;
+
+    /**
+     * Parse with default settings on the common fork-join pool.
+     */
+    public JSONIngest() {
+        this(new JSONParser(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param parser settings for building the objects; shared by all tasks
+     * @param executor runs the parse tasks, for example a fork-join pool or a
+     * virtual thread per task executor
+     */
+    public JSONIngest(final JSONParser parser, final Executor executor) {
+        this.parser = parser;
+        this.executor = executor;
+    }
+
+    /**
+     * @param ordered true to deliver objects in source order (the default),
+     * false to deliver each chunk as soon as it is parsed
+     * @return this
+     */
+    public JSONIngest ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * @param bytes target size of a chunk; a chunk grows beyond this only to
+     * hold a single record that is larger
+     * @return this
+     */
+    public JSONIngest chunkSize(int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + bytes);
+        }
+        this.chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param chunks number of chunks that may be read or parsed but not yet
+     * delivered
+     * @return this
+     */
+    public JSONIngest maxChunksInFlight(int chunks) {
+        if (chunks <= 0) {
+            throw new IllegalArgumentException("Chunks in flight must be positive: " + chunks);
+        }
+        this.maxChunksInFlight = chunks;
+        return this;
+    }
+
+    /**
+     * Parse every record of an NDJSON file.
+     *
+     * @param file the file
+     * @param action receives each object on the calling thread
+     * @return number of objects delivered
+     * @throws IOException if reading or parsing fails
+     */
+    public long forEach(final Path file, final Consumer<? super JSONObject> action) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return forEach(in, action);
+        }
+    }
+
+    /**
+     * Parse every record of an NDJSON stream. The stream is read to its end
+     * but not closed.
+     *
+     * @param data the UTF-8 source
+     * @param action receives each object on the calling thread
+     * @return number of objects delivered
+     * @throws IOException if reading or parsing fails
+     */
+    public long forEach(final InputStream data, final Consumer<? super JSONObject> action) throws IOException {
+        final ArrayDeque<CompletableFuture<List<JSONObject>>> inFlight = new ArrayDeque<>();
+        final BlockingQueue<CompletableFuture<List<JSONObject>>> finished = new LinkedBlockingQueue<>();
+        long count = 0;
+
+        try {
+            byte[] carry = new byte[0];
+            int carryLength = 0;
+            boolean eof = false;
+            while (!eof) {
+                byte[] chunk = new byte[Math.max(chunkSize, carryLength * 2)];
+                System.arraycopy(carry, 0, chunk, 0, carryLength);
+                int length = carryLength;
+                while (length < chunk.length) {
+                    int n = data.read(chunk, length, chunk.length - length);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    length += n;
+                }
+
+                int cut = eof ? length : lastNewline(chunk, length) + 1;
+                if (cut == 0) {
+                    // Nothing left, or a single record larger than the
+                    // chunk that needs more input.
+                    carry = chunk;
+                    carryLength = length;
+                    continue;
+                }
+                carry = Arrays.copyOfRange(chunk, cut, length);
+                carryLength = carry.length;
+
+                while (inFlight.size() >= maxChunksInFlight) {
+                    count += deliver(inFlight, finished, ordered, action);
+                }
+                CompletableFuture<List<JSONObject>> task = CompletableFuture.supplyAsync(() -> parse(chunk, cut), executor);
+                inFlight.add(task);
+                if (!ordered) {
+                    task.whenComplete((r, ex) -> finished.add(task));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                count += deliver(inFlight, finished, ordered, action);
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(false));
+        }
+        return count;
+    }
+
+    /**
+     * Hand one parsed chunk to the action: the oldest when ordered, else the
+     * first to finish.
+     */
+    private <E> long deliver(ArrayDeque<CompletableFuture<List<E>>> inFlight,
+            BlockingQueue<CompletableFuture<List<E>>> finished, boolean inOrder,
+            Consumer<? super E> action) throws IOException {
+        CompletableFuture<List<E>> task;
+        if (inOrder) {
+            task = inFlight.removeFirst();
+        } else {
+            try {
+                task = finished.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a chunk.", ex);
+            }
+            inFlight.remove(task);
+        }
+
+        List<E> results;
+        try {
+            results = task.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw ex;
+        }
+        results.forEach(action);
+        return results.size();
+    }
+
+    /**
+     * Parse a file holding one top level array, elements in parallel.
+     *
+     * @param file the file, mapped into memory; at most 2 GB
+     * @return the array
+     * @throws IOException if reading or parsing fails
+     */
+    public JSONArray<Object> parseArray(final Path file) throws IOException {
+        return parseArray(MappedLexer.mapWhole(file));
+    }
+
+    /**
+     * Parse the UTF-8 document between the buffer's position and limit, which
+     * must be a single top level array, elements in parallel. The elements
+     * end up in source order regardless of {@link #ordered(boolean)}.
+     *
+     * @param data the document
+     * @return the array
+     * @throws IOException if parsing fails
+     */
+    public JSONArray<Object> parseArray(final ByteBuffer data) throws IOException {
+        JSONArray<Object> array = new JSONArray<>();
+        elements(data, true, array::add);
+        return array;
+    }
+
+    /**
+     * Parse a file holding one top level array and hand each element to the
+     * action without building the array.
+     *
+     * @param file the file, mapped into memory; at most 2 GB
+     * @param action receives each element on the calling thread
+     * @return number of elements delivered
+     * @throws IOException if reading or parsing fails
+     */
+    public long forEachElement(final Path file, final Consumer<Object> action) throws IOException {
+        return forEachElement(MappedLexer.mapWhole(file), action);
+    }
+
+    /**
+     * Parse the UTF-8 document between the buffer's position and limit, which
+     * must be a single top level array, and hand each element to the action
+     * without building the array.
+     *
+     * @param data the document
+     * @param action receives each element on the calling thread
+     * @return number of elements delivered
+     * @throws IOException if parsing fails
+     */
+    public long forEachElement(final ByteBuffer data, final Consumer<Object> action) throws IOException {
+        return elements(data, ordered, action);
+    }
+
+    private long elements(ByteBuffer data, boolean inOrder, Consumer<Object> action) throws IOException {
+        final ArrayDeque<CompletableFuture<List<Object>>> inFlight = new ArrayDeque<>();
+        final BlockingQueue<CompletableFuture<List<Object>>> finished = new LinkedBlockingQueue<>();
+        final int limit = data.limit();
+        long count = 0;
+
+        int start = skipWhitespace(data, data.position(), limit);
+        if (start == limit || data.get(start) != '[') {
+            throw new IOException("Expected a top level array.");
+        }
+        start++;
+        final StructuralIndex index = new StructuralIndex(data, start, limit);
+
+        try {
+            for (;;) {
+                int cut = nextCut(data, index, start);
+                while (inFlight.size() >= maxChunksInFlight) {
+                    count += deliver(inFlight, finished, inOrder, action);
+                }
+                final ByteBuffer range = data.duplicate().limit(cut).position(start);
+                CompletableFuture<List<Object>> task = CompletableFuture.supplyAsync(() -> parseElements(range), executor);
+                inFlight.add(task);
+                if (!inOrder) {
+                    task.whenComplete((r, ex) -> finished.add(task));
+                }
+                if (data.get(cut) == ']') {
+                    if (skipWhitespace(data, cut + 1, limit) != limit) {
+                        throw new IOException("Unexpected content after the top level array.");
+                    }
+                    break;
+                }
+                start = cut + 1;
+            }
+            while (!inFlight.isEmpty()) {
+                count += deliver(inFlight, finished, inOrder, action);
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(false));
+        }
+        return count;
+    }
+
+    /**
+     * Walk the structural index from start, just past '[' or an element
+     * separating comma, to the first separating comma at least chunkSize
+     * bytes on, or to the closing bracket of the array.
+     *
+     * @return index of that comma or bracket
+     */
+    private int nextCut(ByteBuffer data, StructuralIndex index, int start) throws IOException {
+        final int target = start + chunkSize;
+        int depth = 0;
+        for (int i; (i = index.next()) >= 0;) {
+            byte b = data.get(i);
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth-- == 0) {
+                    return i;
+                }
+            } else if (b == ',' && depth == 0 && i >= target) {
+                return i;
+            }
+        }
+        throw new IOException("End of document reached in array.");
+    }
+
+    private static int skipWhitespace(ByteBuffer data, int i, int limit) {
+        while (i < limit && Character.isWhitespace(data.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private List<Object> parseElements(ByteBuffer range) {
+        try {
+            return parser.elements(range);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private List<JSONObject> parse(byte[] chunk, int length) {
+        List<JSONObject> objects = new ArrayList<>();
+        ReusableJSONParser p = parser.acquire();
+        try {
+            p.reset(ByteBuffer.wrap(chunk, 0, length));
+            for (Object o; (o = p.parse()) != null;) {
+                if (!(o instanceof JSONObject)) {
+                    throw new IOException("Expected an object but found an array.");
+                }
+                objects.add((JSONObject) o);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            parser.release(p);
+        }
+        return objects;
+    }
+
+    private static int lastNewline(byte[] chunk, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chunk[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
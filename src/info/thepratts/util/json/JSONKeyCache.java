@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded cache of canonical key strings. The raw characters (or bytes) of
+ * a key are hashed in place and looked up before any String is created, so a
+ * stream that repeats the same field names yields the same, already hashed,
+ * String instances over and over.
+ * <p>
+ * The cache is direct mapped: a key that collides with a different one simply
+ * replaces it. Entries are immutable Strings, so the cache can be shared by
+ * parsers on any number of threads without locking.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONKeyCache {
+
+    /**
+     * Keys longer than this are never cached.
+     */
+    static final int MAX_KEY_LENGTH = 64;
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * @param size number of cache slots, rounded up to a power of two
+     */
+    public JSONKeyCache(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + size);
+        }
+        int n = Integer.highestOneBit(Math.min(size, 1 << 30));
+        if (n < size) {
+            n <<= 1;
+        }
+        table = new String[n];
+        mask = n - 1;
+    }
+
+    private int slot(int h) {
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    String key(final char[] chars, int offset, int length) {
+        if (length > MAX_KEY_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[offset + i];
+        }
+        int slot = slot(h);
+        String s = table[slot];
+        if (s != null && s.hashCode() == h && s.length() == length) {
+            int i = 0;
+            while (i < length && s.charAt(i) == chars[offset + i]) {
+                i++;
+            }
+            if (i == length) {
+                return s;
+            }
+        }
+        return store(slot, new String(chars, offset, length));
+    }
+
+    /**
+     * Look up the UTF-8 key in bytes [from, to). Only ASCII keys, whose bytes
+     * are their characters, are cached.
+     */
+    String key(final ByteBuffer bytes, int from, int to) {
+        int length = to - from;
+        if (length > MAX_KEY_LENGTH) {
+            return null;
+        }
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes.get(i);
+            if (b < 0) {
+                return null;
+            }
+            h = 31 * h + b;
+        }
+        int slot = slot(h);
+        String s = table[slot];
+        if (s != null && s.hashCode() == h && s.length() == length) {
+            int i = 0;
+            while (i < length && s.charAt(i) == bytes.get(from + i)) {
+                i++;
+            }
+            if (i == length) {
+                return s;
+            }
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes.get(from + i);
+        }
+        return store(slot, new String(chars));
+    }
+
+    String key(final CharSequence chars) {
+        int length = chars.length();
+        if (length > MAX_KEY_LENGTH) {
+            return chars.toString();
+        }
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        int slot = slot(h);
+        String s = table[slot];
+        if (s != null && s.hashCode() == h && s.contentEquals(chars)) {
+            return s;
+        }
+        return store(slot, chars.toString());
+    }
+
+    private String store(int slot, String s) {
+        s.hashCode(); // computed once, cached in the String from here on
+        table[slot] = s;
+        return s;
+    }
+}
@@ -23,12 +23,10 @@
  */
 package info.thepratts.util.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Optional;
-import java.util.StringJoiner;
-
-import static info.thepratts.util.json.JSON._indent;
-import static info.thepratts.util.json.JSON.escape;
 
 /**
  * Represents a JSON object as a veneer on top of a Hash Map. This contains
@@ -89,49 +87,56 @@ public class JSONObject extends HashMap<String, Object> {
 
     @Override
     public String toString() {
-        StringJoiner sj = new StringJoiner(",", "{", "}");
+        return JSONWriter.toString(this, 0, -1);
+    }
 
-        forEach((key, v) -> {
-            if (v == null) {
-                sj.add(String.format("\"%s\":null", key));
-            } else if (v instanceof String) {
-                sj.add(String.format("\"%s\":\"%s\"", key, escape((String) v)));
-            } else {
-                sj.add(String.format("\"%s\":%s", key, v));
-            }
-        });
+    /**
+     * Write the compact form of this document, as produced by toString(), to
+     * out. Nothing is buffered beyond a single fixed size chunk.
+     *
+     * @param out where to write
+     * @throws IOException if out does
+     */
+    public void writeTo(Appendable out) throws IOException {
+        new JSONWriter(out, -1).value(this, 0).flush();
+    }
 
-        return sj.toString();
+    /**
+     * Write the indented form of this document, as produced by
+     * toString(indent), to out.
+     *
+     * @param out where to write
+     * @param indent spaces per nesting level
+     * @throws IOException if out does
+     */
+    public void writeTo(Appendable out, int indent) throws IOException {
+        new JSONWriter(out, indent).value(this, 0).flush();
     }
 
-    protected String _toString(int c, int indent) {
-        if (isEmpty()) {
-            return "{}";
-        }
+    /**
+     * Write the compact form of this document to out as UTF-8. The stream is
+     * flushed but not closed.
+     *
+     * @param out where to write
+     * @throws IOException if out does
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        new JSONWriter(out, -1).value(this, 0).flush();
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("{\n");
+    /**
+     * Write the indented form of this document to out as UTF-8. The stream is
+     * flushed but not closed.
+     *
+     * @param out where to write
+     * @param indent spaces per nesting level
+     * @throws IOException if out does
+     */
+    public void writeTo(OutputStream out, int indent) throws IOException {
+        new JSONWriter(out, indent).value(this, 0).flush();
+    }
 
-        forEach((key, v) -> {
-            if (sb.length() > 2) {
-                sb.append(",\n");
-            }
-            _indent(sb, (1 + c) * indent);
-            if (v == null) {
-                sb.append(String.format("\"%s\":null", key));
-            } else if (v instanceof String) {
-                sb.append(String.format("\"%s\":\"%s\"", key, escape((String) v)));
-            } else if (v instanceof JSONObject) {
-                sb.append(String.format("\"%s\":%s", key, ((JSONObject) v)._toString(c + 1, indent)));
-            } else if (v instanceof JSONArray) {
-                sb.append(String.format("\"%s\":%s", key, ((JSONArray<?>) v)._toString(c + 1, indent)));
-            } else {
-                sb.append(String.format("\"%s\":%s", key, v));
-            }
-        });
-        sb.append('\n');
-        _indent(sb, c * indent);
-        sb.append("}");
-        return sb.toString();
+    protected String _toString(int c, int indent) {
+        return JSONWriter.toString(this, c, indent);
     }
 }
@@ -0,0 +1,417 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A configurable parser. The static {@link JSON} methods cover the common
+ * case; a JSONParser is for callers that want to tune how documents are
+ * built, such as sharing a {@link JSONKeyCache} across many parses.
+ * <p>
+ * The parse methods accept the same inputs as their {@link JSON#from}
+ * counterparts and return the same trees.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public class JSONParser {
+
+    private final JSONKeyCache keys;
+    private boolean compactObjects;
+    private boolean primitiveArrays;
+    private PathFilter select;
+    private boolean lazy;
+    private boolean retainSource;
+    // Reusable parsers lent to one call at a time by the tree building and
+    // binding parse methods. A call that finds none free, such as one made
+    // from inside another, makes its own; at most POOL_SIZE are kept.
+    private static final int POOL_SIZE = 16;
+    private final AtomicReferenceArray<ReusableJSONParser> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    public JSONParser() {
+        this(null);
+    }
+
+    /**
+     * @param keys cache used to canonicalize object keys, or null for none
+     */
+    public JSONParser(final JSONKeyCache keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Build objects as {@link CompactJSONObject}s, which need far less memory
+     * when most objects have only a handful of fields.
+     *
+     * @param compact true to build compact objects
+     * @return this parser
+     */
+    public JSONParser compactObjects(boolean compact) {
+        this.compactObjects = compact;
+        return this;
+    }
+
+    /**
+     * Build arrays holding only integral numbers as {@link LongJSONArray}s
+     * and arrays holding only decimal numbers as {@link DoubleJSONArray}s,
+     * so their elements are never boxed.
+     *
+     * @param primitive true to build primitive arrays
+     * @return this parser
+     */
+    public JSONParser primitiveArrays(boolean primitive) {
+        this.primitiveArrays = primitive;
+        return this;
+    }
+
+    /**
+     * Keep only the values at the given paths, such as <code>user.id</code>
+     * or <code>items[*].price</code>: keys separated by dots, each optionally
+     * followed by <code>[n]</code> for one array element or <code>[*]</code>
+     * for all of them. Everything else is passed over by a scan that only
+     * looks at quotes and brackets, without building strings or values, so
+     * the trees returned hold just the selected values and the containers
+     * leading to them. Handlers see only the events for those values.
+     * <p>
+     * Applies to whole documents; values built by
+     * {@link JSONReader#readValue()} and the elements of
+     * {@link JSONIngest#parseArray(ByteBuffer)} are not filtered.
+     *
+     * @param paths the paths to keep, or none to keep everything
+     * @return this parser
+     * @throws IllegalArgumentException if a path is malformed
+     */
+    public JSONParser select(String... paths) {
+        this.select = paths.length == 0 ? null : PathFilter.of(paths);
+        return this;
+    }
+
+    /**
+     * Return documents parsed from a String, byte array, ByteBuffer or file as
+     * {@link LazyJSONObject}s and {@link LazyJSONArray}s, which are only
+     * lexed level by level as they are used, and write unchanged parts back
+     * out by copying the source text. Parsing checks the document as
+     * strictly as an eager parse would, but decodes nothing. Readers and
+     * InputStreams are read into memory first; files are mapped whole and must
+     * not exceed 2 GB. Ignored while paths are
+     * {@link #select(String...) selected}.
+     *
+     * @param lazy true to parse lazily
+     * @return this parser
+     */
+    public JSONParser lazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    /**
+     * Build trees, from a String, byte array, ByteBuffer or file, whose
+     * objects and arrays remember their span of the source text. For as long
+     * as a container and everything inside it stays unchanged, the compact
+     * form (toString(), writeTo(...)) copies that span rather than encoding
+     * the values again, so rewriting a field or two of a large document
+     * costs little more than copying it. Containers are built as already
+     * lexed {@link LazyJSONObject}s and {@link LazyJSONArray}s, in place of
+     * compact objects or primitive arrays. Inputs are read whole as for
+     * {@link #lazy(boolean)}. Ignored while paths are
+     * {@link #select(String...) selected}.
+     *
+     * @param retain true to retain the source
+     * @return this parser
+     */
+    public JSONParser retainSource(boolean retain) {
+        this.retainSource = retain;
+        return this;
+    }
+
+    /**
+     * A parser of its own that keeps its buffers from one input to the next;
+     * see {@link ReusableJSONParser}. It follows this parser's settings.
+     *
+     * @return a new reusable parser
+     */
+    public ReusableJSONParser reusable() {
+        return new ReusableJSONParser(this);
+    }
+
+    // The tree building parse methods borrow one of these from a shared pool.
+    public <T> T parse(final String data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse();
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final Reader data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse();
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final InputStream data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse();
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final byte[] data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse();
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final ByteBuffer data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse();
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final Path file) throws IOException {
+        if (keepsInput()) {
+            return parse(MappedLexer.mapWhole(file));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return document(new MappedLexer(channel));
+        }
+    }
+
+    /**
+     * Bind the first document in data to type; see
+     * {@link JSON#from(String, Class)}.
+     */
+    public <T> T parse(final String data, final Class<T> type) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse(type);
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final Reader data, final Class<T> type) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse(type);
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final InputStream data, final Class<T> type) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse(type);
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final byte[] data, final Class<T> type) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse(type);
+        } finally {
+            release(p);
+        }
+    }
+
+    public <T> T parse(final ByteBuffer data, final Class<T> type) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.reset(data).parse(type);
+        } finally {
+            release(p);
+        }
+    }
+
+    /**
+     * Report every document in data to handler instead of building trees;
+     * keys are canonicalized through this parser's key cache.
+     */
+    public void parse(final String data, final JSONHandler handler) throws IOException {
+        char[] chars = data.toCharArray();
+        configure(new CharLexer(chars, 0, chars.length)).parse(handler);
+    }
+
+    public void parse(final Reader data, final JSONHandler handler) throws IOException {
+        configure(new CharLexer(data)).parse(handler);
+    }
+
+    public void parse(final InputStream data, final JSONHandler handler) throws IOException {
+        configure(new ByteLexer(data)).parse(handler);
+    }
+
+    public void parse(final ByteBuffer data, final JSONHandler handler) throws IOException {
+        configure(new ByteLexer(data)).parse(handler);
+    }
+
+    public void parse(final Path file, final JSONHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            configure(new MappedLexer(channel)).parse(handler);
+        }
+    }
+
+    public JSONStream objectsFrom(final Reader data) {
+        return new JSONStream(configure(new CharLexer(data)));
+    }
+
+    public JSONStream objectsFrom(final InputStream data) {
+        return new JSONStream(configure(new ByteLexer(data)));
+    }
+
+    /**
+     * Stream the UTF-8 documents between the buffer's position and limit.
+     */
+    public JSONStream objectsFrom(final ByteBuffer data) {
+        return new JSONStream(configure(new ByteLexer(data)));
+    }
+
+    /**
+     * Stream the documents of a file through a memory mapping. The returned
+     * stream must be closed to release the file.
+     */
+    public JSONStream objectsFrom(final Path file) throws IOException {
+        return new JSONStream(configure(new MappedLexer(FileChannel.open(file, StandardOpenOption.READ))));
+    }
+
+    /**
+     * A pull parser over data; values it materializes with
+     * {@link JSONReader#readValue()} use this parser's settings.
+     */
+    public JSONReader reader(final String data) {
+        char[] chars = data.toCharArray();
+        return new JSONReader(configure(new CharLexer(chars, 0, chars.length)));
+    }
+
+    public JSONReader reader(final Reader data) {
+        return new JSONReader(configure(new CharLexer(data)));
+    }
+
+    public JSONReader reader(final InputStream data) {
+        return new JSONReader(configure(new ByteLexer(data)));
+    }
+
+    public JSONReader reader(final ByteBuffer data) {
+        return new JSONReader(configure(new ByteLexer(data)));
+    }
+
+    /**
+     * A pull parser over a file through a memory mapping. The returned reader
+     * must be closed to release the file.
+     */
+    public JSONReader reader(final Path file) throws IOException {
+        return new JSONReader(configure(new MappedLexer(FileChannel.open(file, StandardOpenOption.READ))));
+    }
+
+    /**
+     * Parse comma separated array elements, without the enclosing brackets.
+     */
+    JSONArray<Object> elements(final ByteBuffer data) throws IOException {
+        ReusableJSONParser p = acquire();
+        try {
+            return p.elements(data);
+        } finally {
+            release(p);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T document(final Lexer lexer) throws IOException {
+        return (T) configure(lexer).document();
+    }
+
+    /**
+     * Borrow a reusable parser; hand it back with {@link #release}.
+     */
+    ReusableJSONParser acquire() {
+        int home = slot();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int at = (home + i) & (POOL_SIZE - 1);
+            ReusableJSONParser p = pool.get(at);
+            if (p != null && pool.compareAndSet(at, p, null)) {
+                return p;
+            }
+        }
+        return reusable();
+    }
+
+    /**
+     * Hand back a parser from {@link #acquire}, dropping its input first so
+     * the pool pins nothing of the caller's.
+     */
+    void release(final ReusableJSONParser p) {
+        p.release();
+        int home = slot();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet((home + i) & (POOL_SIZE - 1), null, p)) {
+                return;
+            }
+        }
+    }
+
+    // Where a thread starts looking, so threads mostly keep to their own.
+    @SuppressWarnings("deprecation")
+    private static int slot() {
+        return (int) Thread.currentThread().getId() & (POOL_SIZE - 1);
+    }
+
+    /**
+     * @return true if parsed trees refer back to their input, which must
+     * then be held whole and not be reused
+     */
+    boolean keepsInput() {
+        return lazy || retainSource;
+    }
+
+    Lexer configure(final Lexer lexer) {
+        lexer.keys = keys;
+        lexer.compactObjects = compactObjects;
+        lexer.primitiveArrays = primitiveArrays;
+        lexer.select = select;
+        lexer.lazy = lazy;
+        lexer.retainSource = retainSource;
+        return lexer;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+import info.thepratts.util.json.JSON.LEXEME;
+
+import static info.thepratts.util.json.JSON.LEXEME.*;
+
+/**
+ * Pull parser: steps through a document one token at a time without building
+ * a tree, so a caller that needs a few fields out of a large document pays
+ * only for those. Values are read from the current token with
+ * {@link #getString()}, {@link #getLong()} and friends; numbers are never
+ * boxed and whole subtrees can be passed over with {@link #skipValue()} or
+ * materialized with {@link #readValue()}.
+ * <pre>
+ * try (JSONReader r = JSON.reader(data)) {
+ *     r.nextToken(); // START_OBJECT
+ *     while (r.nextToken() == JSONReader.Token.KEY) {
+ *         if (r.getString().equals("id")) {
+ *             r.nextToken();
+ *             id = r.getLong();
+ *         } else {
+ *             r.skipValue();
+ *         }
+ *     }
+ * }
+ * </pre> Commas and colons are checked but never reported. Documents may
+ * follow one another, as in NDJSON.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONReader implements Closeable {
+
+    public enum Token {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        KEY,
+        STRING,
+        NUMBER,
+        TRUE,
+        FALSE,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private final Lexer lexer;
+    private Token current;
+
+    // Per open container, true for an object.
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    // The next token must be a key, or the end of an empty object.
+    private boolean expectKey;
+    // A complete value was just read inside a container.
+    private boolean afterValue;
+
+    JSONReader(final Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return the token, END_DOCUMENT once the source is exhausted
+     * @throws IOException if the source fails or the document is bad
+     */
+    public Token nextToken() throws IOException {
+        LEXEME t = advance();
+        boolean separated = false;
+        if (current == Token.KEY) {
+            if (t != COLON) {
+                throw new IOException("Missing ':'.");
+            }
+            t = advance();
+            separated = true;
+        } else if (afterValue) {
+            afterValue = false;
+            if (t == COMMA) {
+                expectKey = objects[depth - 1];
+                t = advance();
+                separated = true;
+            } else if (t != R_BRACE && t != R_BRACKET) {
+                throw new IOException("Missing ','.");
+            }
+        }
+
+        if (expectKey) {
+            expectKey = false;
+            if (t == STRING) {
+                return current = Token.KEY;
+            }
+            if (t != R_BRACE || current != Token.START_OBJECT) {
+                throw new IOException("Expected a key name in quotes but got '" + t + "'.");
+            }
+        } else if (separated && (t == R_BRACE || t == R_BRACKET)) {
+            throw new IOException("Expected a value but got '" + t + "'.");
+        }
+
+        current = switch (t) {
+            case L_BRACE -> {
+                push(true);
+                expectKey = true;
+                yield Token.START_OBJECT;
+            }
+            case L_BRACKET -> {
+                push(false);
+                yield Token.START_ARRAY;
+            }
+            case R_BRACE -> {
+                pop(true);
+                yield Token.END_OBJECT;
+            }
+            case R_BRACKET -> {
+                pop(false);
+                yield Token.END_ARRAY;
+            }
+            case STRING -> Token.STRING;
+            case NUMBER -> Token.NUMBER;
+            case TRUE -> Token.TRUE;
+            case FALSE -> Token.FALSE;
+            case NULL -> Token.NULL;
+            case EOD -> {
+                if (depth > 0) {
+                    throw new IOException("End of document reached in " + (objects[depth - 1] ? "object." : "array."));
+                }
+                yield Token.END_DOCUMENT;
+            }
+            default -> throw new IOException("Unexpected token '" + t + "'.");
+        };
+        valueDone();
+        return current;
+    }
+
+    /**
+     * @return the current token, null before the first call to nextToken
+     */
+    public Token currentToken() {
+        return current;
+    }
+
+    /**
+     * @return number of objects and arrays the current token is inside of;
+     * START_ and END_ tokens count as outside of the container they delimit
+     */
+    public int depth() {
+        return current == Token.START_OBJECT || current == Token.START_ARRAY ? depth - 1 : depth;
+    }
+
+    /**
+     * @return the current STRING or KEY
+     * @throws IllegalStateException if the current token is neither
+     */
+    public String getString() {
+        if (current != Token.STRING && current != Token.KEY) {
+            throw notA("string");
+        }
+        return (String) lexer.value;
+    }
+
+    /**
+     * @return the current NUMBER as a long, truncated if it is not integral
+     * @throws IllegalStateException if the current token is not a number
+     */
+    public long getLong() {
+        checkNumber();
+        if (lexer.value != null) {
+            return ((Number) lexer.value).longValue();
+        }
+        return lexer.isLong ? lexer.longValue : (long) lexer.doubleValue;
+    }
+
+    /**
+     * @return the current NUMBER as a double
+     * @throws IllegalStateException if the current token is not a number
+     */
+    public double getDouble() {
+        checkNumber();
+        if (lexer.value != null) {
+            return ((Number) lexer.value).doubleValue();
+        }
+        return lexer.isLong ? lexer.longValue : lexer.doubleValue;
+    }
+
+    /**
+     * @return the current NUMBER as a Long, Double, BigInteger or BigDecimal,
+     * just as it would appear in a tree
+     * @throws IllegalStateException if the current token is not a number
+     */
+    public Number getNumber() {
+        checkNumber();
+        return (Number) lexer.number();
+    }
+
+    /**
+     * @return true if the current NUMBER is integral and fits a long
+     * @throws IllegalStateException if the current token is not a number
+     */
+    public boolean isLong() {
+        checkNumber();
+        return lexer.value == null && lexer.isLong;
+    }
+
+    /**
+     * @return the current TRUE or FALSE
+     * @throws IllegalStateException if the current token is neither
+     */
+    public boolean getBoolean() {
+        if (current != Token.TRUE && current != Token.FALSE) {
+            throw notA("boolean");
+        }
+        return current == Token.TRUE;
+    }
+
+    /**
+     * Pass over the current value. On START_OBJECT or START_ARRAY the reader
+     * is left on the matching END_ token; on a KEY, the key's value is
+     * skipped; on anything else this does nothing.
+     *
+     * @throws IOException if the source fails or the document is bad
+     */
+    public void skipValue() throws IOException {
+        if (current == Token.KEY) {
+            nextToken();
+        }
+        if (current == Token.START_OBJECT || current == Token.START_ARRAY) {
+            int target = depth - 1;
+            while (depth > target) {
+                nextToken();
+            }
+        }
+    }
+
+    /**
+     * Build the current value as it would appear in a tree: a JSONObject or
+     * JSONArray for START_OBJECT or START_ARRAY, leaving the reader on the
+     * matching END_ token, otherwise the scalar itself. On a KEY the key's
+     * value is read.
+     *
+     * @return the value
+     * @throws IOException if the source fails or the document is bad
+     */
+    public Object readValue() throws IOException {
+        if (current == Token.KEY) {
+            nextToken();
+        }
+        switch (current) {
+            case START_OBJECT, START_ARRAY -> {
+                expectKey = false;
+                Object tree = lexer.tree();
+                depth--;
+                current = current == Token.START_OBJECT ? Token.END_OBJECT : Token.END_ARRAY;
+                valueDone();
+                return tree;
+            }
+            case STRING -> {
+                return lexer.value;
+            }
+            case NUMBER -> {
+                return lexer.number();
+            }
+            case TRUE, FALSE -> {
+                return current == Token.TRUE;
+            }
+            case NULL, END_DOCUMENT -> {
+                return null;
+            }
+            default -> throw new IllegalStateException("Can't read a value at " + current + ".");
+        }
+    }
+
+    /**
+     * Bind the current value to type, reading it straight off the tokens
+     * without building a tree: a record or class is filled in from an
+     * object's keys, a collection, array or map from the corresponding
+     * container, and so on; see {@link JSON#from(String, Class)}. On a KEY
+     * the key's value is read; on START_OBJECT or START_ARRAY the reader is
+     * left on the matching END_ token.
+     *
+     * @param <T> the type
+     * @param type the type to bind to; a primitive type gives its wrapper
+     * @return the value, null for a JSON null or at END_DOCUMENT
+     * @throws IOException if the source fails, the document is bad or it
+     * does not fit type
+     * @throws IllegalArgumentException if type can't be bound to
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T read(Class<T> type) throws IOException {
+        if (current == Token.KEY) {
+            nextToken();
+        }
+        if (current == Token.END_DOCUMENT) {
+            return null;
+        }
+        return (T) Binding.of(type).read(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lexer.close();
+    }
+
+    private LEXEME advance() throws IOException {
+        lexer.key = expectKey && lexer.keys != null;
+        try {
+            lexer.nextToken();
+        } finally {
+            lexer.key = false;
+        }
+        return lexer.token;
+    }
+
+    private void valueDone() {
+        afterValue = depth > 0 && current != Token.START_OBJECT && current != Token.START_ARRAY;
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+        }
+        objects[depth++] = object;
+    }
+
+    private void pop(boolean object) throws IOException {
+        if (depth == 0 || objects[depth - 1] != object) {
+            throw new IOException("Unexpected '" + (object ? '}' : ']') + "'.");
+        }
+        depth--;
+    }
+
+    private void checkNumber() {
+        if (current != Token.NUMBER) {
+            throw notA("number");
+        }
+    }
+
+    private IllegalStateException notA(String what) {
+        return new IllegalStateException("Current token " + current + " is not a " + what + ".");
+    }
+}
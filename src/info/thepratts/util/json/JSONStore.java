@@ -0,0 +1,405 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Documents kept outside the Java heap, in direct memory, in the form
+ * written by {@link JSONBinary}, so that a large resident data set costs the
+ * garbage collector next to nothing.
+ * <pre>
+ * try (JSONStore store = new JSONStore()) {
+ *     long handle = store.parse(text);
+ *     ...
+ *     JSONObject doc = store.get(handle);
+ *     String name = doc.get("name");
+ * }
+ * </pre> Adding a document returns a handle to keep in its place. Getting it
+ * back gives a read-only {@link StoredJSONObject} or {@link StoredJSONArray}
+ * view that decodes values as they are asked for; keep handles, not views.
+ * <p>
+ * Memory is taken in chunks, {@link #DEFAULT_CHUNK_SIZE} by default, and
+ * returned all at once by {@link #close()}. Direct memory is limited by
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ * <p>
+ * Adding is synchronized. Views may be used from any thread once their
+ * handle has been passed on safely, but each view is for one thread at a
+ * time. Every read of the store's memory counts itself in and out, so
+ * closing waits for reads under way on other threads to finish before it
+ * frees anything; reads, and everything else, fail with
+ * IllegalStateException from then on.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class JSONStore implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    // Unsafe.invokeCleaner, to free a chunk now rather than after it has
+    // been collected; null if it can't be had.
+    private static final MethodHandle FREE = free();
+
+    // Reads under way, counted in stripes a cache line apart so that
+    // threads reading at once don't contend on one counter.
+    private static final int STRIPES = 16, PAD = 16;
+
+    private final int chunkSize;
+    private final JSONParser parser = new JSONParser();
+    private final AtomicLongArray readers = new AtomicLongArray(STRIPES * PAD);
+    private ByteBuffer[] chunks = new ByteBuffer[8];
+    private int count;
+    private long documents;
+    private volatile boolean closed;
+
+    public JSONStore() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize bytes of direct memory to take at a time; documents
+     * larger than this get a chunk of their own
+     */
+    public JSONStore(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Bad chunk size: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parse a document into the store.
+     *
+     * @param data the JSON text
+     * @return the document's handle
+     * @throws IOException if the document is bad
+     * @throws IllegalStateException once closed
+     */
+    public long parse(final String data) throws IOException {
+        return add(parser.parse(data));
+    }
+
+    /**
+     * Parse a document into the store.
+     *
+     * @param data the UTF-8 JSON text
+     * @return the document's handle
+     * @throws IOException if the document is bad
+     * @throws IllegalStateException once closed
+     */
+    public long parse(final byte[] data) throws IOException {
+        return add(parser.parse(data));
+    }
+
+    /**
+     * Copy a tree into the store.
+     *
+     * @param tree a JSONObject, JSONArray or single value; see
+     * {@link JSONBinary#encode(Object)}
+     * @return the document's handle
+     * @throws IllegalArgumentException if tree can't be encoded
+     * @throws IllegalStateException once closed
+     */
+    public long add(final Object tree) {
+        byte[] b = JSONBinary.encode(tree);
+        synchronized (this) {
+            check();
+            ByteBuffer chunk = count == 0 ? null : chunks[count - 1];
+            if (chunk == null || chunk.remaining() < b.length) {
+                chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, b.length));
+                if (count == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, count * 2);
+                }
+                chunks[count++] = chunk;
+            }
+            long handle = (long) (count - 1) << 32 | chunk.position();
+            chunk.put(b);
+            documents++;
+            return handle;
+        }
+    }
+
+    /**
+     * @param <T> StoredJSONObject or StoredJSONArray, usually; both may be
+     * used as their plain counterparts
+     * @param handle as returned when the document was added
+     * @return a view of the document, valid until the store is closed
+     * @throws IllegalArgumentException if handle is not from this store
+     * @throws IllegalStateException once closed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final long handle) {
+        int s = enter();
+        try {
+            int chunk = (int) (handle >>> 32), at = (int) handle;
+            ByteBuffer b;
+            // The chunk table and the chunk's bytes are published by add()
+            // under the monitor; take a view of the chunk under it too.
+            synchronized (this) {
+                if (chunk < 0 || chunk >= count || at < 0 || at >= chunks[chunk].position()) {
+                    throw new IllegalArgumentException("Bad handle: " + handle);
+                }
+                b = chunks[chunk].duplicate();
+            }
+            Document d = new Document(this, b.position(at));
+            return (T) d.read(d.root());
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Bad handle: " + handle, ex);
+        } finally {
+            exit(s);
+        }
+    }
+
+    /**
+     * @return the number of documents added
+     */
+    public synchronized long size() {
+        return documents;
+    }
+
+    /**
+     * @return bytes of direct memory held
+     */
+    public synchronized long capacity() {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += chunks[i].capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Free the store's memory, once reads under way on other threads are
+     * done. Views of its documents fail from now on.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // A read either counted itself in before the flag was set, and is
+        // waited for, or sees the flag and backs out.
+        for (int i = 0; i < STRIPES * PAD; i += PAD) {
+            while (readers.get(i) != 0) {
+                Thread.yield();
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                if (FREE != null) {
+                    try {
+                        FREE.invokeExact(chunks[i]);
+                    } catch (Throwable ex) {
+                        // Left to the collector.
+                    }
+                }
+                chunks[i] = null;
+            }
+            count = 0;
+        }
+    }
+
+    void check() {
+        if (closed) {
+            throw new IllegalStateException("The store is closed.");
+        }
+    }
+
+    /**
+     * Count a read of the store's memory in; pair with {@link #exit(int)}.
+     *
+     * @return the stripe counted in
+     * @throws IllegalStateException once closed
+     */
+    @SuppressWarnings("deprecation")
+    int enter() {
+        int s = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+        readers.getAndIncrement(s);
+        if (closed) {
+            readers.getAndDecrement(s);
+            check();
+        }
+        return s;
+    }
+
+    void exit(final int stripe) {
+        readers.getAndDecrement(stripe);
+    }
+
+    private static MethodHandle free() {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field f = unsafe.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafe, "invokeCleaner",
+                            MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(f.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A document of a store, read as views. The methods here are what views
+     * use, each one a counted read.
+     */
+    static final class Document extends JSONBinary.Decoder {
+
+        private final JSONStore store;
+
+        Document(final JSONStore store, final ByteBuffer data) throws IOException {
+            super(data);
+            this.store = store;
+        }
+
+        /**
+         * Fail if the store is closed, for views answering from the heap.
+         */
+        void check() {
+            store.check();
+        }
+
+        /**
+         * @return the size of the container at at
+         */
+        int size(final int at) {
+            int s = store.enter();
+            try {
+                return count(at);
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        /**
+         * @return the value of key in the object at at, or otherwise
+         */
+        Object valueOf(final int at, final String key, final Object otherwise) {
+            int s = store.enter();
+            try {
+                int v = find(at, key);
+                return v < 0 ? otherwise : read(v);
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        boolean has(final int at, final String key) {
+            int s = store.enter();
+            try {
+                return find(at, key) >= 0;
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        /**
+         * @return element i of the array at at
+         */
+        Object elementAt(final int at, final int i) {
+            int s = store.enter();
+            try {
+                Objects.checkIndex(i, count(at));
+                return read(element(at, i));
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        void entries(final int at, final BiConsumer<String, Object> to) {
+            int s = store.enter();
+            try {
+                int n = count(at);
+                for (int i = 0; i < n; i++) {
+                    to.accept(key(at, i), read(entry(at, i)));
+                }
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        void elements(final int at, final Consumer<Object> to) {
+            int s = store.enter();
+            try {
+                int n = count(at);
+                for (int i = 0; i < n; i++) {
+                    to.accept(read(element(at, i)));
+                }
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        /**
+         * Decode the value at at whole, onto the heap.
+         */
+        Object copy(final int at) {
+            int s = store.enter();
+            try {
+                return new JSONBinary.Decoder(this).value(at);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                store.exit(s);
+            }
+        }
+
+        /**
+         * Decode the value at at, any container as a view; only inside a
+         * counted read.
+         */
+        private Object read(final int at) {
+            try {
+                return value(at);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        JSONObject object(final int at) {
+            return new StoredJSONObject(this, at);
+        }
+
+        @Override
+        JSONArray<Object> array(final int at) {
+            return new StoredJSONArray(this, at);
+        }
+    }
+}
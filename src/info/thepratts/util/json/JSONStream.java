@@ -23,64 +23,159 @@
  */
 package info.thepratts.util.json;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
+ * A sequence of JSON documents read back to back from one source, such as
+ * concatenated or newline delimited (NDJSON) documents. All documents are
+ * lexed out of one shared read buffer; since the lexer understands strings,
+ * brackets inside string values never confuse the framing. Roots may be
+ * objects or arrays.
+ * <p>
+ * The source is read ahead in chunks, so it must not be read by anyone else
+ * while the stream is in use.
+ * <p>
+ * This is not thread safe.
  *
  * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
  */
-public class JSONStream {
+public class JSONStream implements Closeable, Iterable<JSONObject> {
 
-    private final Reader data;
+    private final Lexer lexer;
+    private Object lookahead;
 
-    static class Singleton extends Reader {
+    protected JSONStream(final Reader data) {
+        this(new CharLexer(data));
+    }
 
-        boolean escape = false;
-        private final Reader stream;
-        private boolean eod = false;
-        int depth = 0;
+    JSONStream(final Lexer lexer) {
+        this.lexer = lexer;
+    }
 
-        public Singleton(final Reader in) {
-            stream = in;
+    /**
+     * @return true if another document follows
+     * @throws IOException if the source fails or the next document is bad
+     */
+    public boolean hasNext() throws IOException {
+        if (lookahead == null) {
+            lookahead = lexer.document();
         }
+        return lookahead != null;
+    }
 
-        @Override
-        public int read() throws IOException {
-            if (eod) {
-                return -1;
+    /**
+     * Returns the next document, an object or an array.
+     *
+     * @param <T> JSONObject or JSONArray
+     * @return the next document or null once the source is exhausted
+     * @throws IOException if the source fails or the document is bad
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T nextDocument() throws IOException {
+        Object doc = lookahead != null ? lookahead : lexer.document();
+        lookahead = null;
+        return (T) doc;
+    }
+
+    /**
+     * Returns the next document, which must be an object. An array root is
+     * left in place, so {@link #nextDocument()} still returns it.
+     *
+     * @return the next object or null once the source is exhausted
+     * @throws IOException if the source fails, the document is bad or it is
+     * not an object
+     */
+    public JSONObject next() throws IOException {
+        if (hasNext() && !(lookahead instanceof JSONObject)) {
+            throw new IOException("Expected an object but found an array.");
+        }
+        return nextDocument();
+    }
+
+    /**
+     * Iterates the remaining objects. IOExceptions surface as
+     * {@link UncheckedIOException}s, including one for an array root; use
+     * {@link #documents()} when roots may be arrays.
+     */
+    @Override
+    public Iterator<JSONObject> iterator() {
+        return new Documents<>() {
+            @Override
+            JSONObject take() throws IOException {
+                return JSONStream.this.next();
             }
+        };
+    }
 
-            int ch = stream.read();
+    /**
+     * @return the remaining objects as a sequential stream; closing it closes
+     * this JSONStream
+     */
+    public Stream<JSONObject> stream() {
+        return stream(iterator());
+    }
 
-            if (escape) {
-                escape = false;
-            } else if (ch == '\\') {
-                escape = true;
-            } else if (ch == '{') {
-                depth++;
-            } else if (ch == '}' && --depth == 0) {
-                eod = true;
+    /**
+     * @return the remaining documents, objects and arrays alike, as a
+     * sequential stream; closing it closes this JSONStream
+     */
+    public Stream<Object> documents() {
+        return stream(new Documents<>() {
+            @Override
+            Object take() throws IOException {
+                return nextDocument();
             }
-            return ch;
-        }
+        });
+    }
+
+    private <T> Stream<T> stream(final Iterator<T> documents) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(documents, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    private abstract class Documents<T> implements Iterator<T> {
+
+        abstract T take() throws IOException;
 
         @Override
-        public int read(char[] arg0, int arg1, int arg2) {
-            throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        public boolean hasNext() {
+            try {
+                return JSONStream.this.hasNext();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
         }
 
         @Override
-        public void close() {
-            throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return take();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
         }
     }
 
-    protected JSONStream(final Reader data) {
-        this.data = data;
-    }
-
-    public JSONObject next() throws IOException {
-        return JSON.from(new Singleton(data));
+    @Override
+    public void close() throws IOException {
+        lexer.close();
     }
 }
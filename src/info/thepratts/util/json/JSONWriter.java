@@ -0,0 +1,358 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Map;
+
+import static info.thepratts.util.json.JSON.escapeOf;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes a JSONObject / JSONArray tree in a single walk straight into an
+ * {@link Appendable}. Other objects found along the way, or given to
+ * {@link JSON#toJSON(Object)}, are written through their {@link Binding}.
+ * Output is gathered in a fixed char buffer that is handed to the sink
+ * whenever it fills up, so no intermediate String is built per nesting
+ * level.
+ * <p>
+ * A negative indent produces the compact form of toString(); otherwise the
+ * indented form of toString(int).
+ * <p>
+ * Given an OutputStream, the buffer is encoded to UTF-8 by hand as it
+ * drains, and the source bytes of unchanged {@link RawJSON} containers are
+ * copied to the stream as they are.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class JSONWriter {
+
+    private final Appendable out;
+    private final OutputStream bytes;
+    private final int indent;
+    private final char[] buf = new char[Lexer.BUFFER_SIZE];
+    private int n;
+    private byte[] encoded;
+
+    JSONWriter(final Appendable out, int indent) {
+        this.out = out;
+        this.bytes = null;
+        this.indent = indent;
+    }
+
+    /**
+     * Write UTF-8 straight to a stream.
+     */
+    JSONWriter(final OutputStream out, int indent) {
+        this.out = null;
+        this.bytes = out;
+        this.indent = indent;
+        this.encoded = new byte[buf.length * 3];
+    }
+
+    /**
+     * Serialize v, as found at nesting level depth, into a String.
+     */
+    static String toString(Object v, int depth, int indent) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            new JSONWriter(sb, indent).value(v, depth).flush();
+        } catch (IOException ex) {
+            // A StringBuilder does not throw.
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write v, as found at nesting level depth.
+     *
+     * @return this writer
+     */
+    JSONWriter value(Object v, int depth) throws IOException {
+        if (v == null) {
+            write("null");
+        } else if (v instanceof String s) {
+            string(s);
+        } else if (v instanceof RawJSON r && indent < 0 && r.verbatim()) {
+            r.writeSource(this);
+        } else if (v instanceof JSONObject o) {
+            object(o, depth);
+        } else if (v instanceof JSONArray<?> a) {
+            array(a, depth);
+        } else if (v instanceof Long l) {
+            write(l);
+        } else if (v instanceof Number || v instanceof Boolean) {
+            write(v.toString());
+        } else {
+            Binding.of(v.getClass()).write(this, v, depth);
+        }
+        return this;
+    }
+
+    private void object(JSONObject o, int depth) throws IOException {
+        if (o.isEmpty()) {
+            write("{}");
+            return;
+        }
+        write('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> e : o.entrySet()) {
+            if (!first) {
+                write(',');
+            }
+            first = false;
+            newline(depth + 1);
+            string(e.getKey());
+            write(':');
+            value(e.getValue(), depth + 1);
+        }
+        newline(depth);
+        write('}');
+    }
+
+    private void array(JSONArray<?> a, int depth) throws IOException {
+        if (a.isEmpty()) {
+            write("[]");
+            return;
+        }
+        final boolean longs = a instanceof LongJSONArray l && l.primitive();
+        final int size = a.size();
+        write('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            newline(depth + 1);
+            if (longs) {
+                write(a.getLong(i));
+            } else {
+                value(a.get(i), depth + 1);
+            }
+        }
+        newline(depth);
+        write(']');
+    }
+
+    /**
+     * Write s quoted, escaping as needed. Runs of characters that need no
+     * escaping are copied in bulk.
+     */
+    void string(String s) throws IOException {
+        write('"');
+        final int length = s.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String e = escapeOf(s.charAt(i));
+            if (e != null) {
+                write(s, start, i);
+                write(e);
+                start = i + 1;
+            }
+        }
+        write(s, start, length);
+        write('"');
+    }
+
+    void newline(int depth) throws IOException {
+        if (indent < 0) {
+            return;
+        }
+        write('\n');
+        for (int i = depth * indent; i > 0; i--) {
+            write(' ');
+        }
+    }
+
+    void write(char c) throws IOException {
+        if (n == buf.length) {
+            drain();
+        }
+        buf[n++] = c;
+    }
+
+    void write(String s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    void write(CharSequence s, int from, int to) throws IOException {
+        while (from < to) {
+            if (n == buf.length) {
+                drain();
+            }
+            int chunk = Math.min(to - from, buf.length - n);
+            if (s instanceof String str) {
+                str.getChars(from, from + chunk, buf, n);
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    buf[n + i] = s.charAt(from + i);
+                }
+            }
+            n += chunk;
+            from += chunk;
+        }
+    }
+
+    void write(char[] a, int from, int to) throws IOException {
+        while (from < to) {
+            if (n == buf.length) {
+                drain();
+            }
+            int chunk = Math.min(to - from, buf.length - n);
+            System.arraycopy(a, from, buf, n, chunk);
+            n += chunk;
+            from += chunk;
+        }
+    }
+
+    /**
+     * Write the UTF-8 text held in b[from, to): copied as is when writing to
+     * a stream, decoded otherwise.
+     */
+    void writeUtf8(ByteBuffer b, int from, int to) throws IOException {
+        if (bytes == null) {
+            write(b.hasArray()
+                    ? new String(b.array(), b.arrayOffset() + from, to - from, UTF_8)
+                    : UTF_8.decode(b.duplicate().limit(to).position(from)).toString());
+            return;
+        }
+        drain();
+        if (b.hasArray()) {
+            bytes.write(b.array(), b.arrayOffset() + from, to - from);
+            return;
+        }
+        while (from < to) {
+            int chunk = Math.min(to - from, encoded.length);
+            b.get(from, encoded, 0, chunk);
+            bytes.write(encoded, 0, chunk);
+            from += chunk;
+        }
+    }
+
+    void write(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            write(Long.toString(v));
+            return;
+        }
+        if (buf.length - n < 20) {
+            drain();
+        }
+        if (v < 0) {
+            buf[n++] = '-';
+            v = -v;
+        }
+        int end = n + digits(v);
+        for (int i = end - 1; i >= n; i--) {
+            buf[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        n = end;
+    }
+
+    private static int digits(long v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    private void drain() throws IOException {
+        if (n == 0) {
+            return;
+        }
+        if (bytes != null) {
+            encode();
+            return;
+        }
+        if (out instanceof StringBuilder sb) {
+            sb.append(buf, 0, n);
+        } else if (out instanceof Writer w) {
+            w.write(buf, 0, n);
+        } else {
+            out.append(CharBuffer.wrap(buf, 0, n));
+        }
+        n = 0;
+    }
+
+    /**
+     * Encode the buffer to UTF-8 and write it to the stream. A high surrogate
+     * at the very end of a full buffer waits for its partner.
+     */
+    private void encode() throws IOException {
+        int end = n;
+        if (Character.isHighSurrogate(buf[end - 1]) && end == buf.length) {
+            end--;
+        }
+        int j = 0;
+        for (int i = 0; i < end; i++) {
+            char c = buf[i];
+            if (c < 0x80) {
+                encoded[j++] = (byte) c;
+            } else if (c < 0x800) {
+                encoded[j++] = (byte) (0xC0 | c >> 6);
+                encoded[j++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(buf[i + 1])) {
+                    int cp = Character.toCodePoint(c, buf[++i]);
+                    encoded[j++] = (byte) (0xF0 | cp >> 18);
+                    encoded[j++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    encoded[j++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    encoded[j++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    // Unpaired, as String.getBytes(UTF_8) does.
+                    encoded[j++] = '?';
+                }
+            } else {
+                encoded[j++] = (byte) (0xE0 | c >> 12);
+                encoded[j++] = (byte) (0x80 | c >> 6 & 0x3F);
+                encoded[j++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        bytes.write(encoded, 0, j);
+        n -= end;
+        if (n > 0) {
+            buf[0] = buf[end];
+        }
+    }
+
+    /**
+     * Hand everything written so far to the sink, flushing it if it is a
+     * Writer or a stream.
+     */
+    void flush() throws IOException {
+        drain();
+        if (out instanceof Writer w) {
+            w.flush();
+        } else if (bytes != null) {
+            bytes.flush();
+        }
+    }
+}
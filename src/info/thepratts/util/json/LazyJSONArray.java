@@ -0,0 +1,316 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A JSONArray that is lexed only when first used; the array counterpart of
+ * {@link LazyJSONObject}, with the same rules.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class LazyJSONArray extends JSONArray<Object> implements RawJSON {
+
+    private final RawSource source;
+    private final int from;
+    private int to;
+    private final RawJSON parent;
+    private boolean loaded;
+    private boolean modified;
+
+    LazyJSONArray(final RawSource source, final int from, final int to, final RawJSON parent) {
+        this.source = source;
+        this.from = from;
+        this.to = to;
+        this.parent = parent;
+    }
+
+    /**
+     * Start a container that is built already lexed, as its source is read;
+     * see {@link #end(int)}.
+     */
+    LazyJSONArray(final RawSource source, final int from, final RawJSON parent) {
+        this(source, from, from, parent);
+        this.loaded = true;
+    }
+
+    /**
+     * Record where the source text of a container built already lexed ends.
+     */
+    void end(int to) {
+        this.to = to;
+    }
+
+    /**
+     * Lex this level, once.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        try {
+            source.lexer(from, to).lazyArray(this, source);
+        } catch (IOException ex) {
+            // Stay unloaded, so every use fails alike, and stop vouching for
+            // the bad source text.
+            super.clear();
+            touch();
+            throw new UncheckedIOException(ex);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Add an element while lexing, without counting it as a change.
+     */
+    void load(Object value) {
+        super.add(value);
+    }
+
+    private void change() {
+        load();
+        touch();
+    }
+
+    @Override
+    public void touch() {
+        if (!modified) {
+            modified = true;
+            if (parent != null) {
+                parent.touch();
+            }
+        }
+    }
+
+    @Override
+    public boolean verbatim() {
+        return !modified;
+    }
+
+    @Override
+    public void writeSource(JSONWriter out) throws IOException {
+        source.write(out, from, to);
+    }
+
+    @Override
+    public int size() {
+        load();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        load();
+        return super.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        load();
+        return super.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        load();
+        return super.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        load();
+        return super.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        load();
+        return super.toArray();
+    }
+
+    @Override
+    public <A> A[] toArray(A[] a) {
+        load();
+        return super.toArray(a);
+    }
+
+    @Override
+    public Object get(int index) {
+        load();
+        return super.get(index);
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        change();
+        return super.set(index, element);
+    }
+
+    @Override
+    public boolean add(Object e) {
+        change();
+        return super.add(e);
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        change();
+        super.add(index, element);
+    }
+
+    @Override
+    public Object remove(int index) {
+        change();
+        return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        change();
+        return super.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        change();
+        super.clear();
+    }
+
+    @Override
+    public boolean addAll(Collection<?> c) {
+        change();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<?> c) {
+        change();
+        return super.addAll(index, c);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        change();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        change();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Object> filter) {
+        change();
+        return super.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Object> operator) {
+        change();
+        super.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super Object> c) {
+        change();
+        super.sort(c);
+    }
+
+    // ArrayList's iterators write through set/add/remove above.
+    @Override
+    public Iterator<Object> iterator() {
+        load();
+        return super.iterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator() {
+        load();
+        return super.listIterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator(int index) {
+        load();
+        return super.listIterator(index);
+    }
+
+    /**
+     * Sub lists write to the backing array directly, so taking one counts as
+     * a change.
+     */
+    @Override
+    public List<Object> subList(int fromIndex, int toIndex) {
+        change();
+        return super.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Object> action) {
+        load();
+        super.forEach(action);
+    }
+
+    @Override
+    public Spliterator<Object> spliterator() {
+        load();
+        return super.spliterator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        load();
+        if (o instanceof LazyJSONArray a) {
+            a.load();
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        load();
+        return super.hashCode();
+    }
+
+    /**
+     * @return a plain JSONArray holding the same elements
+     */
+    @Override
+    public Object clone() {
+        return new JSONArray<>(this);
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A JSONObject that is lexed only when first used. Until then it is just a
+ * span of its document's source text; the first call to any method lexes
+ * this one level, decoding keys and scalar values, while nested objects and
+ * arrays become lazy containers in turn. Untouched subtrees are never
+ * decoded at all.
+ * <p>
+ * As long as neither it nor anything inside it has been changed, the compact
+ * form (toString(), writeTo(...)) is its source text copied verbatim; to a
+ * stream, source bytes are copied without being decoded. Parsers that
+ * {@link JSONParser#retainSource(boolean) retain their source} build these
+ * already lexed, just for that.
+ * <p>
+ * The whole document is checked for syntax errors when it is parsed, so
+ * the source text copied out is always valid JSON. Should lexing still fail
+ * it surfaces as an {@link UncheckedIOException}. Lexing on first use means
+ * even reads change internal state, so this is not thread safe even for
+ * readers.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class LazyJSONObject extends JSONObject implements RawJSON {
+
+    private final RawSource source;
+    private final int from;
+    private int to;
+    private final RawJSON parent;
+    private boolean loaded;
+    private boolean modified;
+
+    LazyJSONObject(final RawSource source, final int from, final int to, final RawJSON parent) {
+        this.source = source;
+        this.from = from;
+        this.to = to;
+        this.parent = parent;
+    }
+
+    /**
+     * Start a container that is built already lexed, as its source is read;
+     * see {@link #end(int)}.
+     */
+    LazyJSONObject(final RawSource source, final int from, final RawJSON parent) {
+        this(source, from, from, parent);
+        this.loaded = true;
+    }
+
+    /**
+     * Record where the source text of a container built already lexed ends.
+     */
+    void end(int to) {
+        this.to = to;
+    }
+
+    /**
+     * Lex this level, once.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        try {
+            source.lexer(from, to).lazyObject(this, source);
+        } catch (IOException ex) {
+            // Stay unloaded, so every use fails alike, and stop vouching for
+            // the bad source text.
+            super.clear();
+            touch();
+            throw new UncheckedIOException(ex);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Add an entry while lexing, without counting it as a change.
+     */
+    void load(String key, Object value) {
+        super.put(key, value);
+    }
+
+    private void change() {
+        load();
+        touch();
+    }
+
+    @Override
+    public void touch() {
+        if (!modified) {
+            modified = true;
+            if (parent != null) {
+                parent.touch();
+            }
+        }
+    }
+
+    @Override
+    public boolean verbatim() {
+        return !modified;
+    }
+
+    @Override
+    public void writeSource(JSONWriter out) throws IOException {
+        source.write(out, from, to);
+    }
+
+    @Override
+    public int size() {
+        load();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        load();
+        return super.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        load();
+        return (T) super.get(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        load();
+        return super.get(key);
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        load();
+        return super.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        load();
+        return super.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        load();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        change();
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        change();
+        super.putAll(m);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        change();
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        change();
+        return super.remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        change();
+        return super.remove(key, value);
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        change();
+        return super.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        change();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void clear() {
+        change();
+        super.clear();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        load();
+        super.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        change();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        change();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        change();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        change();
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        change();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        load();
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        load();
+        return super.hashCode();
+    }
+
+    /**
+     * @return a plain JSONObject holding the same entries
+     */
+    @Override
+    public Object clone() {
+        JSONObject copy = new JSONObject();
+        copy.putAll(this);
+        return copy;
+    }
+
+    // The views below pass every write through change(), since HashMap's own
+    // views would bypass the overrides above.
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        load();
+        final Set<Map.Entry<String, Object>> entries = super.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Changes<>(entries.iterator()) {
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        final Map.Entry<String, Object> e = super.next();
+                        return new Map.Entry<>() {
+                            @Override
+                            public String getKey() {
+                                return e.getKey();
+                            }
+
+                            @Override
+                            public Object getValue() {
+                                return e.getValue();
+                            }
+
+                            @Override
+                            public Object setValue(Object value) {
+                                change();
+                                return e.setValue(value);
+                            }
+
+                            @Override
+                            public boolean equals(Object o) {
+                                return e.equals(o);
+                            }
+
+                            @Override
+                            public int hashCode() {
+                                return e.hashCode();
+                            }
+
+                            @Override
+                            public String toString() {
+                                return e.toString();
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return entries.contains(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                change();
+                return entries.remove(o);
+            }
+
+            @Override
+            public void clear() {
+                LazyJSONObject.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        load();
+        final Set<String> keys = super.keySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Changes<>(keys.iterator());
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return keys.contains(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                change();
+                return keys.remove(o);
+            }
+
+            @Override
+            public void clear() {
+                LazyJSONObject.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        load();
+        final Collection<Object> values = super.values();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Object> iterator() {
+                return new Changes<>(values.iterator());
+            }
+
+            @Override
+            public int size() {
+                return values.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return values.contains(o);
+            }
+
+            @Override
+            public void clear() {
+                LazyJSONObject.this.clear();
+            }
+        };
+    }
+
+    /**
+     * A view iterator whose remove() counts as a change.
+     */
+    private class Changes<E> implements Iterator<E> {
+
+        private final Iterator<E> it;
+
+        Changes(Iterator<E> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public E next() {
+            return it.next();
+        }
+
+        @Override
+        public void remove() {
+            change();
+            it.remove();
+        }
+    }
+}
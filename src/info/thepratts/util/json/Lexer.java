@@ -0,0 +1,739 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import info.thepratts.util.json.JSON.LEXEME;
+
+import static info.thepratts.util.json.JSON.LEXEME.*;
+
+/**
+ * Common base of the lexers. A subclass turns its input into a stream of
+ * {@link LEXEME} tokens; the recursive descent over those tokens that reports
+ * them to a {@link JSONHandler}, such as the {@link TreeBuilder}, lives here
+ * so every input flavour produces the same events.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+abstract class Lexer {
+
+    static final int BUFFER_SIZE = 8192;
+
+    // Scratch space beyond this is dropped on reset rather than kept.
+    static final int MAX_RETAINED = 1 << 16;
+
+    final StringBuilder sb = new StringBuilder();
+    LEXEME token = BOD;
+    Object value;
+
+    // Canonicalizes object keys when set; 'key' marks a key being lexed.
+    JSONKeyCache keys;
+    boolean key;
+
+    // Build CompactJSONObjects instead of hash based JSONObjects.
+    boolean compactObjects;
+
+    // Build Long/DoubleJSONArrays for arrays of uniform numbers.
+    boolean primitiveArrays;
+
+    // A NUMBER that fits a long or double is left unboxed here, with 'value'
+    // null; see number().
+    boolean isLong;
+    long longValue;
+    double doubleValue;
+
+    // Keeps only these paths of each document when set; see parse().
+    PathFilter select;
+
+    // Return lazy containers from document() when the input allows it.
+    boolean lazy;
+
+    // Build trees whose containers remember their source text, when the
+    // input allows it.
+    boolean retainSource;
+
+    private TreeBuilder tree;
+
+    // Per container open in skipValue(), true for an object.
+    private boolean[] open = new boolean[16];
+
+    /**
+     * Consume the entire token. 'token' is left with the token type and value
+     * its 'value' if it is a string or a number.
+     */
+    abstract void nextToken() throws IOException;
+
+    /**
+     * Forget the previous input's token state so the lexer, with its scratch
+     * buffers, can be used on new input; subclasses then set the input.
+     */
+    void reset() {
+        token = BOD;
+        value = null;
+        key = false;
+        sb.setLength(0);
+        if (sb.capacity() > MAX_RETAINED) {
+            sb.trimToSize();
+        }
+        if (open.length > MAX_RETAINED) {
+            open = new boolean[16];
+        }
+    }
+
+    /**
+     * Drop every reference to the input and to the last document, so that a
+     * lexer kept for reuse pins neither; it must be reset before it is used
+     * again.
+     */
+    void release() {
+        reset();
+        if (tree != null) {
+            tree.reset();
+            tree.source = null;
+        }
+    }
+
+    /**
+     * Release the underlying source, if the lexer owns one.
+     */
+    void close() throws IOException {
+    }
+
+    /**
+     * Consume the entire token. 'token' is left with the token type and value
+     * its 'value' if it is a string or a number. If the next token is not a
+     * colon, then throw an exception.
+     */
+    void nextTokenColonCheck() throws IOException {
+        nextToken();
+        if (token != COLON) {
+            throw new IOException("Missing ':'.");
+        }
+    }
+
+    /**
+     * Consume the entire token like {@link #nextToken()}, checking it the same
+     * way, but leave 'value' alone: strings and numbers are not decoded.
+     */
+    abstract void skipToken() throws IOException;
+
+    /**
+     * Pass over the next value without decoding it. Its tokens are checked,
+     * and put together, by the same rules value() reads them by, so a value
+     * skipped here and copied out verbatim later always parses again.
+     */
+    void skipValue() throws IOException {
+        skipToken();
+        int depth = 0;
+        for (;;) {
+            // 'token' starts a value.
+            switch (token) {
+                case L_BRACE, L_BRACKET -> {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = token == L_BRACE;
+                }
+                case STRING, NUMBER, TRUE, FALSE, NULL -> {
+                }
+                default -> throw new IOException("Unexpected token '" + token + "' encountered while processing an array.");
+            }
+            // Move on to the next value, closing containers on the way.
+            for (;;) {
+                if (depth == 0) {
+                    return;
+                }
+                if (open[depth - 1]) {
+                    skipToken();
+                    if (token == R_BRACE) {
+                        depth--;
+                        continue;
+                    }
+                    if (token == COMMA) {
+                        skipToken();
+                    }
+                    if (token != STRING) {
+                        throw new IOException("Expected a key name in quotes but got '" + token + "'.");
+                    }
+                    skipToken();
+                    if (token != COLON) {
+                        throw new IOException("Missing ':'.");
+                    }
+                    skipToken();
+                    if (token == R_BRACE || token == R_BRACKET || token == COMMA || token == COLON || token == EOD) {
+                        throw new IOException("Invalid token: " + token);
+                    }
+                } else {
+                    do {
+                        skipToken();
+                    } while (token == COMMA);
+                    if (token == R_BRACKET) {
+                        depth--;
+                        continue;
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Skip whitespace and return the next character without consuming it, or
+     * -1 at the end of the document.
+     */
+    abstract int consumeWhitespace() throws IOException;
+
+    /**
+     * @return the index of the next character or byte, absolute within the
+     * fixed input of a lexer that has a {@link #source()}
+     */
+    abstract int position();
+
+    /**
+     * @return the whole input, for lazy containers to refer back to, or null
+     * if the input is read incrementally
+     */
+    RawSource source() {
+        return null;
+    }
+
+    /**
+     * Consume and return the next character, or -1 at the end of the
+     * document. Only used off the fast paths, such as for escapes.
+     */
+    abstract int read() throws IOException;
+
+    /**
+     * Decode the escape sequence following a backslash and append the
+     * character it stands for to 'sb'.
+     */
+    void escape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"', '\\', '/' -> sb.append((char) c);
+            case 'b' -> sb.append('\b');
+            case 'f' -> sb.append('\f');
+            case 'n' -> sb.append('\n');
+            case 'r' -> sb.append('\r');
+            case 't' -> sb.append('\t');
+            case 'u' -> {
+                int u = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(read(), 16);
+                    if (h < 0) {
+                        throw new IOException("Invalid unicode escape in string.");
+                    }
+                    u = (u << 4) | h;
+                }
+                sb.append((char) u);
+            }
+            case -1 -> throw new IOException("End of document reached in string.");
+            default -> throw new IOException("Invalid escape '\\" + (char) c + "' in string.");
+        }
+    }
+
+    /**
+     * Check the escape sequence following a backslash as escape() would
+     * decode it, without decoding it.
+     */
+    void skipEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> {
+            }
+            case 'u' -> {
+                for (int i = 0; i < 4; i++) {
+                    if (Character.digit(read(), 16) < 0) {
+                        throw new IOException("Invalid unicode escape in string.");
+                    }
+                }
+            }
+            case -1 -> throw new IOException("End of document reached in string.");
+            default -> throw new IOException("Invalid escape '\\" + (char) c + "' in string.");
+        }
+    }
+
+    static LEXEME lexeme(int ch) throws IOException {
+        LEXEME t = LEXEME.map(ch);
+        if (t == null) {
+            throw new IOException("Invalid character '" + (char) ch + "' encountered while searching for next token.");
+        }
+        return t;
+    }
+
+    /**
+     * Begin a number token with its first character.
+     */
+    void numberStart(int ch) throws IOException {
+        sb.setLength(0);
+        if (ch == '-' || ch == '+' || (ch >= '0' && ch <= '9')) {
+            sb.append((char) ch);
+        } else {
+            throw new IOException("Expected a number, got " + (char) ch + " instead.");
+        }
+    }
+
+    /**
+     * Convert the number text accumulated in 'sb' into the token's value. Digits are
+     * accumulated arithmetically so the common cases allocate nothing beyond
+     * the boxed result. Integers too large for a long become a BigInteger and
+     * decimals outside the range of a double become a BigDecimal.
+     */
+    void numberValue() throws IOException {
+        final int length = sb.length();
+        int i = 0;
+        char c = sb.charAt(0);
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            i++;
+        }
+
+        long mantissa = 0;  // up to 19 significant digits, unsigned
+        int digits = 0;     // significant digits in mantissa
+        int exponent = 0;   // power of ten applied to mantissa
+        boolean truncated = false;
+        boolean isDecimal = false;
+        int start = i;
+
+        for (; i < length && (c = sb.charAt(i)) >= '0' && c <= '9'; i++) {
+            if (digits < 19) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                truncated = true;
+                exponent++;
+            }
+        }
+        boolean hasDigits = i > start;
+
+        if (i < length && c == '.') {
+            isDecimal = true;
+            start = ++i;
+            for (; i < length && (c = sb.charAt(i)) >= '0' && c <= '9'; i++) {
+                if (digits < 19) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+            }
+            hasDigits |= i > start;
+        }
+
+        if (hasDigits && i < length && (c == 'e' || c == 'E')) {
+            isDecimal = true;
+            boolean negativeExponent = false;
+            if (++i < length && ((c = sb.charAt(i)) == '-' || c == '+')) {
+                negativeExponent = c == '-';
+                i++;
+            }
+            start = i;
+            int e = 0;
+            for (; i < length && (c = sb.charAt(i)) >= '0' && c <= '9'; i++) {
+                if (e < 100_000) {
+                    e = e * 10 + (c - '0');
+                }
+            }
+            hasDigits = i > start;
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (!hasDigits || i < length) {
+            throw new IOException("Invalid number '" + sb + "'.");
+        }
+
+        if (!isDecimal) {
+            if (!truncated && Long.compareUnsigned(mantissa, negative ? Long.MIN_VALUE : Long.MAX_VALUE) <= 0) {
+                value = null;
+                isLong = true;
+                longValue = negative ? -mantissa : mantissa;
+            } else {
+                value = new BigInteger(sb.toString());
+            }
+            return;
+        }
+
+        double d = truncated ? Double.NaN : FastDouble.toDouble(mantissa, exponent);
+        if (Double.isNaN(d)) {
+            d = Math.abs(Double.parseDouble(sb.toString()));
+        }
+        if (Double.isInfinite(d) || (d == 0 && mantissa != 0)) {
+            value = new BigDecimal(sb.toString());
+        } else {
+            value = null;
+            isLong = false;
+            doubleValue = negative ? -d : d;
+        }
+    }
+
+    // Where a number's text has got to in numberState(); any other value
+    // means it can no longer be one.
+    private static final int SIGN = 0, INTEGER = 1, POINT = 2, FRACTION = 3, EXP = 4, EXP_SIGN = 5, EXPONENT = 6;
+
+    /**
+     * @return the state of a number's text after its first character, which
+     * numberStart() has accepted
+     */
+    static int numberState(int first) {
+        return first == '-' || first == '+' ? SIGN : INTEGER;
+    }
+
+    /**
+     * Follow a number's text one more character, by the rules numberValue()
+     * reads it by, without converting it.
+     */
+    static int numberState(int state, int c) {
+        if (c >= '0' && c <= '9') {
+            return switch (state) {
+                case SIGN, INTEGER -> INTEGER;
+                case POINT, FRACTION -> FRACTION;
+                case EXP, EXP_SIGN, EXPONENT -> EXPONENT;
+                default -> -1;
+            };
+        }
+        return switch (c) {
+            case '.' -> state == SIGN ? POINT : state == INTEGER ? FRACTION : -1;
+            case 'e', 'E' -> state == INTEGER || state == FRACTION ? EXP : -1;
+            case '+', '-' -> state == EXP ? EXP_SIGN : -1;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @throws IOException unless state is that of a whole number
+     */
+    static void numberEnd(int state) throws IOException {
+        if (state != INTEGER && state != FRACTION && state != EXPONENT) {
+            throw new IOException("Invalid number.");
+        }
+    }
+
+    /**
+     * @return the current NUMBER token as an object
+     */
+    Object number() {
+        if (value != null) {
+            return value;
+        }
+        return isLong ? (Object) longValue : (Object) doubleValue;
+    }
+
+    /**
+     * Parse a complete document.
+     *
+     * @return a JSONObject, a JSONArray or null for an empty document
+     */
+    Object document() throws IOException {
+        if (lazy && select == null) {
+            RawSource source = source();
+            if (source != null) {
+                return lazyDocument(source);
+            }
+        }
+        return documentStart() ? tree(select) : null;
+    }
+
+    /**
+     * Pass over the next document, checking it without decoding anything,
+     * and return it as a lazy container.
+     */
+    private Object lazyDocument(RawSource source) throws IOException {
+        int c = consumeWhitespace();
+        if (c == -1) {
+            return null;
+        }
+        if (c != '{' && c != '[') {
+            throw new IOException("Can't parse JSON document. Must start with '{' or '['.");
+        }
+        return lazyContainer(c, source, null);
+    }
+
+    private RawJSON lazyContainer(int c, RawSource source, RawJSON parent) throws IOException {
+        int start = position();
+        skipValue();
+        return c == '{'
+                ? new LazyJSONObject(source, start, position(), parent)
+                : new LazyJSONArray(source, start, position(), parent);
+    }
+
+    /**
+     * Lex one level of the lazy object o, which is the entire input: keys
+     * and scalars are decoded, nested containers become lazy ones.
+     */
+    void lazyObject(LazyJSONObject o, RawSource source) throws IOException {
+        nextToken(); // {
+        for (;;) {
+            key = keys != null;
+            nextToken();
+            if (token == COMMA) {
+                nextToken();
+            }
+            key = false;
+            if (token == R_BRACE) {
+                return;
+            }
+            if (token != STRING) {
+                throw new IOException("Expected a key name in quotes but got '" + token + "'.");
+            }
+            String key = (String) value;
+            nextTokenColonCheck();
+            o.load(key, lazyValue(source, o));
+        }
+    }
+
+    /**
+     * Lex one level of the lazy array a, which is the entire input.
+     */
+    void lazyArray(LazyJSONArray a, RawSource source) throws IOException {
+        nextToken(); // [
+        for (;;) {
+            int c = consumeWhitespace();
+            if (c == ',') {
+                nextToken();
+                c = consumeWhitespace();
+            }
+            if (c == ']') {
+                return;
+            }
+            a.load(lazyValue(source, a));
+        }
+    }
+
+    private Object lazyValue(RawSource source, RawJSON parent) throws IOException {
+        int c = consumeWhitespace();
+        if (c == '{' || c == '[') {
+            return lazyContainer(c, source, parent);
+        }
+        nextToken();
+        return switch (token) {
+            case STRING -> value;
+            case NUMBER -> number();
+            case TRUE -> true;
+            case FALSE -> false;
+            case NULL -> null;
+            default -> throw new IOException("Invalid token: " + token);
+        };
+    }
+
+    /**
+     * Report every document up to the end of the input to handler. Values
+     * outside the selected paths are skipped without being reported.
+     */
+    void parse(JSONHandler handler) throws IOException {
+        while (documentStart()) {
+            value(handler, select);
+        }
+    }
+
+    /**
+     * Read the first token of the next document.
+     *
+     * @return false at the end of the input
+     */
+    private boolean documentStart() throws IOException {
+        nextToken();
+        // Do we have an object or an array?
+        return switch (token) {
+            case L_BRACE, L_BRACKET -> true;
+            case EOD -> false;
+            default -> throw new IOException("Can't parse JSON document. Must start with '{' or '['.");
+        };
+    }
+
+    /**
+     * Build the value starting at the current token as a tree.
+     */
+    Object tree() throws IOException {
+        return tree(null);
+    }
+
+    private Object tree(PathFilter filter) throws IOException {
+        if (tree == null) {
+            tree = new TreeBuilder();
+        }
+        tree.reset();
+        tree.compactObjects = compactObjects;
+        tree.primitiveArrays = primitiveArrays;
+        tree.source = retainSource && filter == null ? source() : null;
+        tree.lexer = this;
+        value(tree, filter);
+        return tree.result();
+    }
+
+    /**
+     * Add comma separated values to list up to the end of the document; used
+     * to parse a slice of a larger array.
+     */
+    void elementsToEnd(JSONArray<Object> list) throws IOException {
+        for (;;) {
+            nextToken();
+            switch (token) {
+                case EOD -> {
+                    return;
+                }
+                case COMMA -> {
+                }
+                default -> list.add(tree());
+            }
+        }
+    }
+
+    /**
+     * Report the value starting at the current token, and everything inside
+     * it that filter selects, to handler.
+     *
+     * @param filter the paths kept below this value, or null to keep all
+     */
+    private void value(JSONHandler handler, PathFilter filter) throws IOException {
+        switch (token) {
+            case L_BRACE -> // {}
+                    object(handler, filter);
+            case L_BRACKET -> // []
+                    array(handler, filter);
+            case STRING -> handler.value((String) value);
+            case NUMBER -> {
+                if (value != null) {
+                    handler.value((Number) value);
+                } else if (isLong) {
+                    handler.value(longValue);
+                } else {
+                    handler.value(doubleValue);
+                }
+            }
+            case TRUE -> handler.value(true);
+            case FALSE -> handler.value(false);
+            case NULL -> handler.nullValue();
+            default -> throw new IOException("Unexpected token '" + token + "' encountered while processing an array.");
+        }
+    }
+
+    private void object(JSONHandler handler, PathFilter filter) throws IOException {
+        handler.startObject();
+
+        for (;;) {
+            // Process key.
+            key = keys != null;
+            nextToken();
+
+            switch (token) {
+                case COMMA -> nextToken();
+                // more objects
+                case R_BRACE -> {
+                    key = false;
+                    handler.endObject();
+                    return; // all done
+                }
+            }
+            key = false;
+
+            if (token != STRING) {
+                throw new IOException("Expected a key name in quotes but got '" + token + "'.");
+            }
+
+            String key = (String) value;
+            nextTokenColonCheck();
+            PathFilter next = null;
+            if (filter != null) {
+                next = filter.field(key);
+                if (next == null) {
+                    skipValue();
+                    continue;
+                }
+            }
+            nextToken();
+
+            // Process value.
+            if (token == R_BRACE || token == R_BRACKET || token == COMMA || token == COLON || token == EOD) {
+                throw new IOException("Invalid token: " + token);
+            }
+            if (select(next)) {
+                handler.key(key);
+                value(handler, next == null || next.all() ? null : next);
+            }
+        }
+    }
+
+    private void array(JSONHandler handler, PathFilter filter) throws IOException {
+        handler.startArray();
+
+        for (int index = 0;; index++) {
+            PathFilter next = null;
+            if (filter != null) {
+                next = filter.element(index);
+                if (next == null) {
+                    if (!skipElement()) {
+                        handler.endArray();
+                        return;
+                    }
+                    continue;
+                }
+            }
+            // grab the next token
+            do {
+                nextToken();
+            } while (token == COMMA);
+            if (token == R_BRACKET) {
+                handler.endArray();
+                return;
+            }
+            if (select(next)) {
+                value(handler, next == null || next.all() ? null : next);
+            }
+        }
+    }
+
+    /**
+     * A value reached through a path that goes on below it is only kept if
+     * it is an object or an array.
+     */
+    private boolean select(PathFilter next) {
+        return next == null || next.all() || token == L_BRACE || token == L_BRACKET;
+    }
+
+    /**
+     * Skip the next array element and the comma before it, if any.
+     *
+     * @return false if the array ended instead, with its ']' consumed
+     */
+    private boolean skipElement() throws IOException {
+        if (consumeWhitespace() == ',') {
+            nextToken();
+        }
+        if (consumeWhitespace() == ']') {
+            nextToken();
+            return false;
+        }
+        skipValue();
+        return true;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lexer over a memory mapped file. The file is mapped one region at a time
+ * and the window slides to the next region once the current one has been
+ * consumed, so files larger than a single mapping (2 GB) are fine and no
+ * bytes are copied through heap buffers.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+class MappedLexer extends ByteLexer {
+
+    static final long REGION_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+    private long regionStart;
+
+    MappedLexer(final FileChannel channel) throws IOException {
+        this(channel, REGION_SIZE);
+    }
+
+    MappedLexer(final FileChannel channel, long regionSize) throws IOException {
+        super(ByteBuffer.allocate(0));
+        this.channel = channel;
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Map an entire file in one piece, for callers that need stable
+     * positions across the whole of it.
+     *
+     * @throws IOException if the file is larger than 2 GB
+     */
+    static ByteBuffer mapWhole(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map in one piece: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    boolean fill() throws IOException {
+        // Everything up to the limit has been consumed.
+        long start = regionStart + limit;
+        if (start >= size) {
+            return false;
+        }
+        regionStart = start;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+        pos = 0;
+        limit = buf.limit();
+        return true;
+    }
+
+    /**
+     * The window slides, so positions are not stable.
+     */
+    @Override
+    RawSource source() {
+        return null;
+    }
+
+    @Override
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The set of paths a parser keeps, as a trie walked in step with the
+ * document. A path is a dotted list of keys, where any key may be followed
+ * by array steps: <code>[n]</code> for one element and <code>[*]</code> for
+ * every element, as in <code>user.id</code> or
+ * <code>items[*].price</code>. A path may also start with an array step
+ * when the document is an array.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class PathFilter {
+
+    private final Map<String, PathFilter> fields = new HashMap<>();
+    private final Map<Integer, PathFilter> indexes = new HashMap<>();
+    private PathFilter anyElement;
+    // A path ends here, so everything below is kept.
+    private boolean all;
+
+    /**
+     * @param paths the paths to keep
+     * @return the root of the trie
+     * @throws IllegalArgumentException if a path is malformed
+     */
+    static PathFilter of(String... paths) {
+        PathFilter root = new PathFilter();
+        for (String path : paths) {
+            root.add(path);
+        }
+        root.spreadWildcards();
+        return root;
+    }
+
+    /**
+     * @return true if the whole value at this node is kept
+     */
+    boolean all() {
+        return all;
+    }
+
+    /**
+     * @return the node for the value under key, or null to skip it
+     */
+    PathFilter field(String key) {
+        return fields.get(key);
+    }
+
+    /**
+     * @return the node for the array element at index, or null to skip it
+     */
+    PathFilter element(int index) {
+        PathFilter n = indexes.get(index);
+        return n != null ? n : anyElement;
+    }
+
+    private void add(String path) {
+        PathFilter node = this;
+        int i = 0;
+        final int length = path.length();
+        if (length == 0) {
+            throw invalid(path);
+        }
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw invalid(path);
+                }
+                String step = path.substring(i + 1, end);
+                if (step.equals("*")) {
+                    if (node.anyElement == null) {
+                        node.anyElement = new PathFilter();
+                    }
+                    node = node.anyElement;
+                } else {
+                    try {
+                        node = node.indexes.computeIfAbsent(Integer.parseUnsignedInt(step), k -> new PathFilter());
+                    } catch (NumberFormatException ex) {
+                        throw invalid(path);
+                    }
+                }
+                i = end + 1;
+            } else {
+                if (c == '.') {
+                    if (i == 0) {
+                        throw invalid(path);
+                    }
+                    i++;
+                }
+                int end = i;
+                while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i) {
+                    throw invalid(path);
+                }
+                node = node.fields.computeIfAbsent(path.substring(i, end), k -> new PathFilter());
+                i = end;
+            }
+        }
+        node.all = true;
+    }
+
+    /**
+     * An element picked by index must also get whatever [*] asks of every
+     * element, so fold the [*] branch into each index branch.
+     */
+    private void spreadWildcards() {
+        if (anyElement != null) {
+            for (PathFilter n : indexes.values()) {
+                n.merge(anyElement);
+            }
+            anyElement.spreadWildcards();
+        }
+        fields.values().forEach(PathFilter::spreadWildcards);
+        indexes.values().forEach(PathFilter::spreadWildcards);
+    }
+
+    private void merge(PathFilter other) {
+        all |= other.all;
+        other.fields.forEach((k, n) -> fields.computeIfAbsent(k, x -> new PathFilter()).merge(n));
+        other.indexes.forEach((k, n) -> indexes.computeIfAbsent(k, x -> new PathFilter()).merge(n));
+        if (other.anyElement != null) {
+            if (anyElement == null) {
+                anyElement = new PathFilter();
+            }
+            anyElement.merge(other.anyElement);
+        }
+    }
+
+    private static IllegalArgumentException invalid(String path) {
+        return new IllegalArgumentException("Invalid path '" + path + "'.");
+    }
+}
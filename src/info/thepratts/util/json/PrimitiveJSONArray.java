@@ -0,0 +1,372 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Common base of the JSONArrays that keep their numbers in a primitive array.
+ * Elements are boxed only when they are read through the {@link List}
+ * interface. Storing something the primitive array cannot hold moves the
+ * contents into the inherited ArrayList storage for good.
+ * <p>
+ * While primitive, every List operation goes through an AbstractList view
+ * over the primitive array so the full List contract holds.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ * @param <T> boxed element type
+ */
+abstract class PrimitiveJSONArray<T> extends JSONArray<T> {
+
+    int size;
+    private boolean boxed;
+    private final View view = new View();
+
+    /**
+     * @return element i boxed
+     */
+    abstract T box(int i);
+
+    /**
+     * @return true if e can be stored in the primitive array
+     */
+    abstract boolean accepts(Object e);
+
+    abstract void store(int i, T e);
+
+    /**
+     * Insert e at i, shifting later elements up. 'size' is not changed.
+     */
+    abstract void insert(int i, T e);
+
+    /**
+     * Remove element i, shifting later elements down. 'size' is not changed.
+     */
+    abstract void delete(int i);
+
+    /**
+     * Drop the primitive array once the contents are boxed.
+     */
+    abstract void release();
+
+    final boolean primitive() {
+        return !boxed;
+    }
+
+    final void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+    }
+
+    /**
+     * Count a value the subclass stored at 'size' itself, so iterators over
+     * the primitive array fail fast.
+     */
+    final void appended() {
+        view.appended();
+    }
+
+    private void inflate() {
+        final int n = size;
+        super.ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            super.add(box(i));
+        }
+        boxed = true;
+        size = 0;
+        release();
+    }
+
+    /**
+     * The primitive array as a List. Once the contents are boxed it forwards
+     * to the ArrayList storage so iterators handed out earlier keep working.
+     */
+    private final class View extends AbstractList<T> implements RandomAccess {
+
+        @Override
+        public T get(int index) {
+            if (boxed) {
+                return PrimitiveJSONArray.super.get(index);
+            }
+            checkIndex(index);
+            return box(index);
+        }
+
+        @Override
+        public T set(int index, T element) {
+            if (boxed) {
+                return PrimitiveJSONArray.super.set(index, element);
+            }
+            checkIndex(index);
+            if (!accepts(element)) {
+                inflate();
+                return PrimitiveJSONArray.super.set(index, element);
+            }
+            T old = box(index);
+            store(index, element);
+            return old;
+        }
+
+        @Override
+        public void add(int index, T element) {
+            if (boxed) {
+                PrimitiveJSONArray.super.add(index, element);
+                return;
+            }
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            modCount++;
+            if (!accepts(element)) {
+                inflate();
+                PrimitiveJSONArray.super.add(index, element);
+                return;
+            }
+            insert(index, element);
+            size++;
+        }
+
+        @Override
+        public T remove(int index) {
+            if (boxed) {
+                return PrimitiveJSONArray.super.remove(index);
+            }
+            checkIndex(index);
+            modCount++;
+            T old = box(index);
+            delete(index);
+            size--;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            if (boxed) {
+                PrimitiveJSONArray.super.clear();
+                return;
+            }
+            modCount++;
+            size = 0;
+        }
+
+        @Override
+        public int size() {
+            return boxed ? PrimitiveJSONArray.super.size() : size;
+        }
+
+        void appended() {
+            modCount++;
+            size++;
+        }
+    }
+
+    @Override
+    public int size() {
+        return boxed ? super.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public T get(int index) {
+        return boxed ? super.get(index) : view.get(index);
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return boxed ? super.set(index, element) : view.set(index, element);
+    }
+
+    @Override
+    public boolean add(T e) {
+        if (boxed) {
+            return super.add(e);
+        }
+        view.add(size, e);
+        return true;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        if (boxed) {
+            super.add(index, element);
+        } else {
+            view.add(index, element);
+        }
+    }
+
+    @Override
+    public T remove(int index) {
+        return boxed ? super.remove(index) : view.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return boxed ? super.remove(o) : view.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        if (boxed) {
+            super.clear();
+        } else {
+            view.clear();
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        return boxed ? super.addAll(c) : view.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> c) {
+        return boxed ? super.addAll(index, c) : view.addAll(index, c);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return boxed ? super.removeAll(c) : view.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return boxed ? super.retainAll(c) : view.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        return boxed ? super.removeIf(filter) : view.removeIf(filter);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return boxed ? super.contains(o) : view.contains(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return boxed ? super.containsAll(c) : view.containsAll(c);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return boxed ? super.indexOf(o) : view.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return boxed ? super.lastIndexOf(o) : view.lastIndexOf(o);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return boxed ? super.iterator() : view.iterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator() {
+        return boxed ? super.listIterator() : view.listIterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator(int index) {
+        return boxed ? super.listIterator(index) : view.listIterator(index);
+    }
+
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        return boxed ? super.subList(fromIndex, toIndex) : view.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return boxed ? super.spliterator() : view.spliterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return boxed ? super.toArray() : view.toArray();
+    }
+
+    @Override
+    public <E> E[] toArray(E[] a) {
+        return boxed ? super.toArray(a) : view.toArray(a);
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        if (boxed) {
+            super.forEach(action);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            action.accept(box(i));
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super T> c) {
+        if (boxed) {
+            super.sort(c);
+        } else {
+            view.sort(c);
+        }
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<T> operator) {
+        if (boxed) {
+            super.replaceAll(operator);
+        } else {
+            view.replaceAll(operator);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return boxed ? super.equals(o) : view.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return boxed ? super.hashCode() : view.hashCode();
+    }
+}
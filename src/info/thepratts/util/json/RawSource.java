@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The complete text of a parsed document, kept so that containers can be
+ * lexed later, on demand, and written back out exactly as they were read.
+ * Positions are absolute indexes into the char array or byte buffer.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class RawSource {
+
+    private final char[] chars;
+    private final ByteBuffer bytes;
+    private final JSONKeyCache keys;
+
+    RawSource(final char[] chars, final JSONKeyCache keys) {
+        this.chars = chars;
+        this.bytes = null;
+        this.keys = keys;
+    }
+
+    /**
+     * @param bytes UTF-8 text; it must not change while in use
+     */
+    RawSource(final ByteBuffer bytes, final JSONKeyCache keys) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.keys = keys;
+    }
+
+    /**
+     * @return a lexer over [from, to)
+     */
+    Lexer lexer(int from, int to) {
+        Lexer lexer = chars != null
+                ? new CharLexer(chars, from, to - from)
+                : new ByteLexer(bytes.duplicate().limit(to).position(from));
+        lexer.keys = keys;
+        return lexer;
+    }
+
+    /**
+     * Copy the text [from, to) to out.
+     */
+    void write(JSONWriter out, int from, int to) throws IOException {
+        if (chars != null) {
+            out.write(chars, from, to);
+        } else {
+            out.writeUtf8(bytes, from, to);
+        }
+    }
+}
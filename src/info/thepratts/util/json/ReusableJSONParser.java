@@ -0,0 +1,230 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * A parser that is reset onto one input after another, keeping its lexers,
+ * read buffers and scratch space, so that steady state parsing of many small
+ * messages allocates little more than the trees themselves. Settings, such
+ * as the key cache, come from the {@link JSONParser} it was made by and are
+ * picked up on every reset.
+ * <pre>
+ * ReusableJSONParser p = parser.reusable();
+ * for (String message : messages) {
+ *     JSONObject o = p.reset(message).parse();
+ * }
+ * </pre> {@link JSONParser#parse(String)} and friends already borrow these
+ * from a small pool kept by each JSONParser; make one explicitly to keep it
+ * to yourself. {@link #release()} lets go of the input between uses.
+ * <p>
+ * This is not thread safe, and a handler must not use the parser that is
+ * calling it.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class ReusableJSONParser {
+
+    // Strings longer than this are copied into an array of their own rather
+    // than into the kept one.
+    static final int MAX_RETAINED_TEXT = 1 << 20;
+
+    private final JSONParser settings;
+    private CharLexer chars;
+    private ByteLexer bytes;
+    private char[] text;
+    private Lexer lexer;
+
+    ReusableJSONParser(final JSONParser settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @param data the input for the next calls to parse()
+     * @return this parser
+     */
+    public ReusableJSONParser reset(final String data) {
+        final int length = data.length();
+        char[] a;
+        if (settings.keepsInput() || length > MAX_RETAINED_TEXT) {
+            // Lazy containers refer back to the array.
+            a = data.toCharArray();
+        } else {
+            if (text == null || text.length < length) {
+                text = new char[Math.max(length, Lexer.BUFFER_SIZE)];
+            }
+            data.getChars(0, length, text, 0);
+            a = text;
+        }
+        if (chars == null) {
+            chars = new CharLexer(a, 0, length);
+        } else {
+            chars.reset(a, 0, length);
+        }
+        return use(chars);
+    }
+
+    /**
+     * @param data the input for the next calls to parse(); read whole first
+     * if the settings keep the input
+     * @return this parser
+     * @throws IOException if the input must be read whole and reading fails
+     */
+    public ReusableJSONParser reset(final Reader data) throws IOException {
+        if (settings.keepsInput()) {
+            StringWriter all = new StringWriter();
+            data.transferTo(all);
+            return reset(all.toString());
+        }
+        if (chars == null) {
+            chars = new CharLexer(data);
+        } else {
+            chars.reset(data);
+        }
+        return use(chars);
+    }
+
+    /**
+     * @param data the UTF-8 input for the next calls to parse(); read whole
+     * first if the settings keep the input
+     * @return this parser
+     * @throws IOException if the input must be read whole and reading fails
+     */
+    public ReusableJSONParser reset(final InputStream data) throws IOException {
+        if (settings.keepsInput()) {
+            return reset(ByteBuffer.wrap(data.readAllBytes()));
+        }
+        if (bytes == null) {
+            bytes = new ByteLexer(data);
+        } else {
+            bytes.reset(data);
+        }
+        return use(bytes);
+    }
+
+    /**
+     * @param data the UTF-8 input for the next calls to parse()
+     * @return this parser
+     */
+    public ReusableJSONParser reset(final byte[] data) {
+        return reset(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param data the UTF-8 input, between the buffer's position and limit,
+     * for the next calls to parse()
+     * @return this parser
+     */
+    public ReusableJSONParser reset(final ByteBuffer data) {
+        if (bytes == null) {
+            bytes = new ByteLexer(data);
+        } else {
+            bytes.reset(data);
+        }
+        return use(bytes);
+    }
+
+    /**
+     * Let go of the input, and of anything left of the last document, so
+     * that they can be collected while this parser is kept; the next parse
+     * needs a reset first.
+     */
+    public void release() {
+        if (chars != null) {
+            chars.release();
+        }
+        if (bytes != null) {
+            bytes.release();
+        }
+        lexer = null;
+    }
+
+    private ReusableJSONParser use(Lexer lexer) {
+        this.lexer = settings.configure(lexer);
+        return this;
+    }
+
+    /**
+     * Parse the next document of the input.
+     *
+     * @param <T> JSONObject or JSONArray
+     * @return the document, or null once the input is exhausted
+     * @throws IOException if the input fails or the document is bad
+     * @throws IllegalStateException before the first reset
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parse() throws IOException {
+        return (T) lexer().document();
+    }
+
+    /**
+     * Report every remaining document of the input to handler.
+     *
+     * @param handler receives the documents
+     * @throws IOException if the input fails or a document is bad
+     * @throws IllegalStateException before the first reset
+     */
+    public void parse(final JSONHandler handler) throws IOException {
+        lexer().parse(handler);
+    }
+
+    /**
+     * Bind the next document of the input to type, without building a tree;
+     * see {@link JSON#from(String, Class)}.
+     *
+     * @param <T> the type
+     * @param type the type to bind to
+     * @return the value, or null once the input is exhausted
+     * @throws IOException if the input fails, the document is bad or it does
+     * not fit type
+     * @throws IllegalArgumentException if type can't be bound to
+     * @throws IllegalStateException before the first reset
+     */
+    public <T> T parse(final Class<T> type) throws IOException {
+        JSONReader r = new JSONReader(lexer());
+        r.nextToken();
+        return r.read(type);
+    }
+
+    /**
+     * Parse comma separated array elements, without the enclosing brackets.
+     */
+    JSONArray<Object> elements(final ByteBuffer data) throws IOException {
+        JSONArray<Object> list = new JSONArray<>();
+        reset(data).lexer.elementsToEnd(list);
+        return list;
+    }
+
+    private Lexer lexer() {
+        if (lexer == null) {
+            throw new IllegalStateException("No input; call reset first.");
+        }
+        return lexer;
+    }
+}
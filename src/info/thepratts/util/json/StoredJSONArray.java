@@ -0,0 +1,253 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A read-only view of an array held in a {@link JSONStore}; the array
+ * counterpart of {@link StoredJSONObject}, with the same rules. Getting an
+ * element by index decodes just that element.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class StoredJSONArray extends JSONArray<Object> {
+
+    private final JSONStore.Document doc;
+    private final int at;
+    private boolean loaded;
+
+    StoredJSONArray(final JSONStore.Document doc, final int at) {
+        this.doc = doc;
+        this.at = at;
+    }
+
+    /**
+     * Decode every element, once.
+     */
+    private void load() {
+        doc.check();
+        if (loaded) {
+            return;
+        }
+        try {
+            doc.elements(at, super::add);
+        } catch (RuntimeException ex) {
+            super.clear();
+            throw ex;
+        }
+        loaded = true;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Stored documents are read-only.");
+    }
+
+    @Override
+    public int size() {
+        if (loaded) {
+            doc.check();
+            return super.size();
+        }
+        return doc.size(at);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (loaded) {
+            doc.check();
+            return super.get(index);
+        }
+        return doc.elementAt(at, index);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        load();
+        return super.contains(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        load();
+        return super.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        load();
+        return super.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        load();
+        return super.toArray();
+    }
+
+    @Override
+    public <A> A[] toArray(A[] a) {
+        load();
+        return super.toArray(a);
+    }
+
+    // ArrayList's iterators write through set/add/remove, which refuse.
+    @Override
+    public Iterator<Object> iterator() {
+        load();
+        return super.iterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator() {
+        load();
+        return super.listIterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator(int index) {
+        load();
+        return super.listIterator(index);
+    }
+
+    /**
+     * Sub lists write to the backing array directly, so are wrapped.
+     */
+    @Override
+    public List<Object> subList(int fromIndex, int toIndex) {
+        load();
+        return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+    }
+
+    @Override
+    public void forEach(Consumer<? super Object> action) {
+        load();
+        super.forEach(action);
+    }
+
+    @Override
+    public Spliterator<Object> spliterator() {
+        load();
+        return super.spliterator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        load();
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        load();
+        return super.hashCode();
+    }
+
+    /**
+     * @return a plain JSONArray decoded whole, which outlives the store
+     */
+    @Override
+    public Object clone() {
+        return doc.copy(at);
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean add(Object e) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object remove(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Object> filter) {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Object> operator) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort(Comparator<? super Object> c) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A read-only view of an object held in a {@link JSONStore}. Looking up a key
+ * decodes just that value, with nested objects and arrays as views in turn;
+ * anything that goes over every entry, such as iteration, equals() or
+ * toString(), decodes this level into the map first, as a
+ * {@link LazyJSONObject} does. Primitive arrays come back as on-heap copies.
+ * <p>
+ * Changes fail with UnsupportedOperationException, and every use fails with
+ * IllegalStateException once the store is closed; {@link #clone()} gives a
+ * copy that outlives it. This is not thread safe, even for readers.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+public final class StoredJSONObject extends JSONObject {
+
+    private final JSONStore.Document doc;
+    private final int at;
+    private boolean loaded;
+
+    StoredJSONObject(final JSONStore.Document doc, final int at) {
+        this.doc = doc;
+        this.at = at;
+    }
+
+    /**
+     * Decode this level, once.
+     */
+    private void load() {
+        doc.check();
+        if (loaded) {
+            return;
+        }
+        try {
+            doc.entries(at, super::put);
+        } catch (RuntimeException ex) {
+            super.clear();
+            throw ex;
+        }
+        loaded = true;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Stored documents are read-only.");
+    }
+
+    @Override
+    public int size() {
+        if (loaded) {
+            doc.check();
+            return super.size();
+        }
+        return doc.size(at);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        return (T) getOrDefault(key, null);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        if (loaded || !(key instanceof String)) {
+            doc.check();
+            return super.getOrDefault(key, defaultValue);
+        }
+        return doc.valueOf(at, (String) key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (loaded || !(key instanceof String)) {
+            doc.check();
+            return super.containsKey(key);
+        }
+        return doc.has(at, (String) key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        load();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        load();
+        super.forEach(action);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        load();
+        return Collections.unmodifiableSet(super.entrySet());
+    }
+
+    @Override
+    public Set<String> keySet() {
+        load();
+        return Collections.unmodifiableSet(super.keySet());
+    }
+
+    @Override
+    public Collection<Object> values() {
+        load();
+        return Collections.unmodifiableCollection(super.values());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        load();
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        load();
+        return super.hashCode();
+    }
+
+    /**
+     * @return a plain JSONObject decoded whole, which outlives the store
+     */
+    @Override
+    public Object clone() {
+        return doc.copy(at);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> m) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stage one of a two stage parse: finds the positions of the structural
+ * bytes <code>{ } [ ] , :</code> and of opening quotes, skipping everything
+ * inside strings, without building any tokens. A consumer that only needs
+ * the shape of a document walks these positions instead of every byte.
+ * <p>
+ * Bytes are classified eight at a time in a long (SWAR), and only words
+ * holding a quote, backslash or structural byte are looked at byte by byte.
+ * The source is indexed lazily in blocks, so memory stays constant for any
+ * document size.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class StructuralIndex {
+
+    static final int BLOCK_SIZE = 1 << 14;
+
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long CASE = 0x2020202020202020L;
+    private static final long QUOTES = 0x2222222222222222L;
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+    private static final long COMMAS = 0x2C2C2C2C2C2C2C2CL;
+    private static final long COLONS = 0x3A3A3A3A3A3A3A3AL;
+    // '[' and ']' differ from '{' and '}' only by the 0x20 bit.
+    private static final long OPENS = 0x7B7B7B7B7B7B7B7BL;
+    private static final long CLOSES = 0x7D7D7D7D7D7D7D7DL;
+
+    private final ByteBuffer buf;
+    private final int limit;
+    private int scanned;
+    private boolean inString;
+    private int escapedAt = -1;
+    private final int[] positions = new int[BLOCK_SIZE];
+    private int count;
+    private int next;
+
+    /**
+     * Index the bytes [from, to) of data, which must not be inside a string.
+     */
+    StructuralIndex(final ByteBuffer data, final int from, final int to) {
+        this.buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.scanned = from;
+        this.limit = to;
+    }
+
+    /**
+     * @return the position of the next structural byte or opening quote, or
+     * -1 at the end of the range
+     */
+    int next() {
+        while (next == count) {
+            if (scanned >= limit) {
+                return -1;
+            }
+            index();
+        }
+        return positions[next++];
+    }
+
+    /**
+     * @return true if the range ended inside a string
+     */
+    boolean inString() {
+        return inString;
+    }
+
+    private void index() {
+        count = next = 0;
+        int i = scanned;
+        int end = Math.min(limit, scanned + BLOCK_SIZE);
+        for (; i + 8 <= end; i += 8) {
+            long w = buf.getLong(i);
+            long m = matches(w, QUOTES) | matches(w, BACKSLASHES) | matches(w, COMMAS)
+                    | matches(w, COLONS) | matches(w | CASE, OPENS) | matches(w | CASE, CLOSES);
+            while (m != 0) {
+                int at = i + (Long.numberOfTrailingZeros(m) >>> 3);
+                visit(at, buf.get(at));
+                m &= m - 1;
+            }
+        }
+        for (; i < end; i++) {
+            visit(i, buf.get(i));
+        }
+        scanned = end;
+    }
+
+    private void visit(int at, byte b) {
+        if (inString) {
+            if (at == escapedAt) {
+                return;
+            }
+            if (b == '\\') {
+                escapedAt = at + 1;
+            } else if (b == '"') {
+                inString = false;
+            }
+        } else if (b == '"') {
+            inString = true;
+            positions[count++] = at;
+        } else if (b == ',' || b == ':' || (b | 0x20) == '{' || (b | 0x20) == '}') {
+            positions[count++] = at;
+        }
+    }
+
+    /**
+     * Find the first quote or backslash in [from, to) of buf, eight bytes at
+     * a time. Neither can occur inside a multi-byte UTF-8 sequence.
+     *
+     * @return its index, or to if there is none
+     */
+    static int quoteOrBackslash(ByteBuffer buf, int from, int to) {
+        boolean littleEndian = buf.order() == ByteOrder.LITTLE_ENDIAN;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = buf.getLong(i);
+            long m = matches(w, QUOTES) | matches(w, BACKSLASHES);
+            if (m != 0) {
+                return i + ((littleEndian ? Long.numberOfTrailingZeros(m) : Long.numberOfLeadingZeros(m)) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '"' || b == '\\') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the high bit set in exactly those bytes of w equal to the
+     * corresponding byte of pattern
+     */
+    private static long matches(long w, long pattern) {
+        long x = w ^ pattern;
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+}
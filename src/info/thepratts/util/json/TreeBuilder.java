@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Ken Pratt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package info.thepratts.util.json;
+
+import java.util.Arrays;
+
+/**
+ * The handler that builds {@link JSONObject} / {@link JSONArray} trees. One
+ * instance is reused for every document a lexer parses.
+ *
+ * @author Ken Pratt &lt;kenpratt@comcast.net&gt;
+ */
+final class TreeBuilder implements JSONHandler {
+
+    // Build CompactJSONObjects instead of hash based JSONObjects.
+    boolean compactObjects;
+
+    // Build Long/DoubleJSONArrays for arrays of uniform numbers.
+    boolean primitiveArrays;
+
+    // Build LazyJSONObject/Arrays, already lexed, that remember their span
+    // of this source; 'lexer' tells where each one starts and ends.
+    RawSource source;
+    Lexer lexer;
+
+    // Open containers: a JSONObject, a JSONArray, or a Numbers while an array
+    // has held only longs or only doubles. 'keys' holds each object's
+    // pending key.
+    private Object[] open = new Object[16];
+    private String[] keys = new String[16];
+    private int depth;
+    private Object result;
+
+    /**
+     * Drop whatever a failed document left behind.
+     */
+    void reset() {
+        while (depth > 0) {
+            pop();
+        }
+        result = null;
+    }
+
+    /**
+     * @return the completed value, cleared for the next document
+     */
+    Object result() {
+        Object r = result;
+        result = null;
+        return r;
+    }
+
+    @Override
+    public void startObject() {
+        if (source != null) {
+            // The '{' has just been read.
+            push(new LazyJSONObject(source, lexer.position() - 1, parent()));
+            return;
+        }
+        push(compactObjects ? new CompactJSONObject() : new JSONObject());
+    }
+
+    @Override
+    public void key(String key) {
+        keys[depth - 1] = key;
+    }
+
+    @Override
+    public void endObject() {
+        Object o = pop();
+        if (o instanceof LazyJSONObject l) {
+            l.end(lexer.position());
+        }
+        add(o);
+    }
+
+    @Override
+    public void startArray() {
+        if (source != null) {
+            push(new LazyJSONArray(source, lexer.position() - 1, parent()));
+            return;
+        }
+        push(primitiveArrays ? new Numbers() : new JSONArray<>());
+    }
+
+    @Override
+    public void endArray() {
+        Object a = pop();
+        if (a instanceof LazyJSONArray l) {
+            l.end(lexer.position());
+        }
+        add(a instanceof Numbers n ? n.array() : a);
+    }
+
+    private RawJSON parent() {
+        return depth > 0 ? (RawJSON) open[depth - 1] : null;
+    }
+
+    @Override
+    public void value(String value) {
+        add(value);
+    }
+
+    @Override
+    public void value(long value) {
+        if (depth > 0 && open[depth - 1] instanceof Numbers n && n.add(value)) {
+            return;
+        }
+        add(value);
+    }
+
+    @Override
+    public void value(double value) {
+        if (depth > 0 && open[depth - 1] instanceof Numbers n && n.add(value)) {
+            return;
+        }
+        add(value);
+    }
+
+    @Override
+    public void value(Number value) {
+        add(value);
+    }
+
+    @Override
+    public void value(boolean value) {
+        add(value);
+    }
+
+    @Override
+    public void nullValue() {
+        add(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(Object value) {
+        if (depth == 0) {
+            result = value;
+            return;
+        }
+        Object top = open[depth - 1];
+        if (top instanceof LazyJSONObject l) {
+            l.load(keys[depth - 1], value);
+        } else if (top instanceof LazyJSONArray l) {
+            l.load(value);
+        } else if (top instanceof JSONObject o) {
+            o.put(keys[depth - 1], value);
+        } else if (top instanceof JSONArray<?> a) {
+            ((JSONArray<Object>) a).add(value);
+        } else {
+            // Not a uniform numeric array after all.
+            JSONArray<Object> a = ((Numbers) top).boxed();
+            a.add(value);
+            open[depth - 1] = a;
+        }
+    }
+
+    private void push(Object container) {
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        open[depth++] = container;
+    }
+
+    private Object pop() {
+        Object top = open[--depth];
+        open[depth] = null;
+        keys[depth] = null;
+        return top;
+    }
+
+    /**
+     * An array that has held only longs or only doubles so far, collected
+     * without boxing.
+     */
+    private static final class Numbers {
+
+        long[] longs;
+        double[] doubles;
+        int n;
+
+        boolean add(long value) {
+            if (doubles != null) {
+                return false;
+            }
+            if (longs == null) {
+                longs = new long[8];
+            } else if (n == longs.length) {
+                longs = Arrays.copyOf(longs, n << 1);
+            }
+            longs[n++] = value;
+            return true;
+        }
+
+        boolean add(double value) {
+            if (longs != null) {
+                return false;
+            }
+            if (doubles == null) {
+                doubles = new double[8];
+            } else if (n == doubles.length) {
+                doubles = Arrays.copyOf(doubles, n << 1);
+            }
+            doubles[n++] = value;
+            return true;
+        }
+
+        JSONArray<?> array() {
+            if (longs != null) {
+                return new LongJSONArray(n == longs.length ? longs : Arrays.copyOf(longs, n), n);
+            }
+            if (doubles != null) {
+                return new DoubleJSONArray(n == doubles.length ? doubles : Arrays.copyOf(doubles, n), n);
+            }
+            return new JSONArray<>();
+        }
+
+        JSONArray<Object> boxed() {
+            JSONArray<Object> list = new JSONArray<>();
+            for (int i = 0; i < n; i++) {
+                list.add(longs != null ? (Object) longs[i] : (Object) doubles[i]);
+            }
+            return list;
+        }
+    }
+}
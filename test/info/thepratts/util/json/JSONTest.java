@@ -26,9 +26,33 @@ package info.thepratts.util.json;
 import org.junit.*;
 
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.ToolProvider;
 
 import static org.junit.Assert.*;
 
@@ -337,6 +361,90 @@ public class JSONTest {
         assertTrue(doc.get("fred"));
     }
 
+    @Test
+    public void testReaderAcrossBufferBoundary() throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        String big = "x".repeat(3 * Lexer.BUFFER_SIZE + 7);
+        for (int i = 0; i < 2000; i++) {
+            sb.append("{\"s\":\"").append(i).append("\\\"q\",\"n\":").append(i).append(".5,\"b\":true},");
+        }
+        sb.append("\"").append(big).append("\",12345678901]");
+        JSONArray<?> doc = JSON.from(new StringReader(sb.toString()));
+        assertEquals(2002, doc.size());
+        assertEquals("1999\"q", ((JSONObject) doc.get(1999)).get("s"));
+        assertEquals(1999.5, ((JSONObject) doc.get(1999)).get("n"));
+        assertEquals(big, doc.get(2000));
+        assertEquals(12345678901L, doc.get(2001));
+    }
+
+    @Test
+    public void testInvalidCharacter() {
+        try {
+            JSON.from("{\"a\":~}");
+            fail("Should not get here!");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBytes() throws IOException {
+        byte[] msg = "{\"a\":\"Horníková\",\"b\":[1,-2.5e3,true,false,null,\"q\\\"\"]}".getBytes(StandardCharsets.UTF_8);
+        JSONObject doc = JSON.from(msg);
+        assertEquals("Horníková", doc.get("a"));
+        assertEquals(Arrays.asList(1L, -2.5e3, true, false, null, "q\""), doc.get("b"));
+        assertEquals(doc, JSON.from(ByteBuffer.allocateDirect(msg.length).put(msg).flip()));
+    }
+
+    @Test
+    public void testInputStreamMatchesReader() throws IOException {
+        for (String name : new String[]{"test-01", "test-02", "test-03", "test-04", "test-05", "sample"}) {
+            Object expected = JSON.from(new InputStreamReader(new FileInputStream("samples/" + name + ".json"), StandardCharsets.UTF_8));
+            // A tiny read size forces every token across window boundaries.
+            InputStream slow = new FilterInputStream(new FileInputStream("samples/" + name + ".json")) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return super.read(b, off, Math.min(len, 3));
+                }
+            };
+            assertEquals(expected, JSON.from(slow));
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        assertEquals(JSON.from(new FileReader("samples/test-05.json")), JSON.from(Paths.get("samples/test-05.json")));
+        assertEquals(JSON.from(new FileReader("samples/sample.json")), JSON.from(Paths.get("samples/sample.json")));
+    }
+
+    @Test
+    public void testMappedRegions() throws IOException {
+        // Tiny regions make every token cross a mapping boundary.
+        try (FileChannel channel = FileChannel.open(Paths.get("samples/test-05.json"))) {
+            assertEquals(JSON.from(new FileReader("samples/test-05.json")), new MappedLexer(channel, 7).document());
+        }
+    }
+
+    @Test
+    public void testMappedStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        append(new FileReader("samples/test-01.json"), out);
+        append(new FileReader("samples/test-02.json"), out);
+        append(new FileReader("samples/test-03.json"), out);
+        Path file = Files.createTempFile("stream", ".json");
+        try {
+            Files.write(file, out.toByteArray());
+            try (JSONStream i = JSON.objectsFrom(file)) {
+                assertEquals(JSON.from(new FileReader("samples/test-01.json")), i.next());
+                assertEquals("", i.next().get("name"));
+                assertEquals("utx", i.next().get("op"));
+                assertNull(i.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     Function<Number, Integer> asInt = Number::intValue;
 
     @Test
@@ -361,6 +469,1196 @@ public class JSONTest {
         assertEquals(1234, value2);
     }
 
+    @Test
+    public void testNumberOverflow() throws IOException {
+        JSONArray<?> doc = JSON.from("[9223372036854775807,-9223372036854775808,9223372036854775808,-123456789012345678901234,1e400,-1e-400]");
+        assertEquals(Long.MAX_VALUE, doc.get(0));
+        assertEquals(Long.MIN_VALUE, doc.get(1));
+        assertEquals(new BigInteger("9223372036854775808"), doc.get(2));
+        assertEquals(new BigInteger("-123456789012345678901234"), doc.get(3));
+        assertEquals(new BigDecimal("1e400"), doc.get(4));
+        assertEquals(new BigDecimal("-1e-400"), doc.get(5));
+    }
+
+    @Test
+    public void testNumberDoubles() throws IOException {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder("[");
+        List<Double> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong() & 0x7fefffffffffffffL);
+            String text = i % 2 == 0 ? Double.toString(d) : (random.nextInt(1000000) + "." + random.nextInt(1000) + "e" + (random.nextInt(80) - 40));
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(text);
+            expected.add(Double.parseDouble(text));
+        }
+        sb.append(']');
+        assertEquals(expected, JSON.from(sb.toString()));
+        assertEquals(expected, JSON.from(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testNumberInvalid() {
+        for (String number : new String[]{"-", "1-2", "1e", "--1", "1.2.3"}) {
+            try {
+                JSON.from("[" + number + "]");
+                fail("Should not get here!");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testKeyCache() throws IOException {
+        JSONParser parser = new JSONParser(new JSONKeyCache(256));
+        String text = "[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"name\":\"b\"}]";
+        for (Object doc : new Object[]{parser.parse(text), parser.parse(text.getBytes(StandardCharsets.UTF_8)), parser.parse(new StringReader(text))}) {
+            JSONArray<JSONObject> list = (JSONArray<JSONObject>) doc;
+            assertEquals(JSON.from(text), list);
+            String first = list.get(0).keySet().stream().filter("id"::equals).findFirst().get();
+            String second = list.get(1).keySet().stream().filter("id"::equals).findFirst().get();
+            assertSame(first, second);
+        }
+        JSONArray<JSONObject> sample = parser.parse(Paths.get("samples/test-05.json"));
+        assertEquals(JSON.from(new FileReader("samples/test-05.json")), sample);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompactObjects() throws IOException {
+        JSONParser parser = new JSONParser().compactObjects(true);
+        JSONArray<JSONObject> doc = parser.parse(new FileReader("samples/test-05.json"));
+        assertEquals(JSON.from(new FileReader("samples/test-05.json")), doc);
+        assertTrue(doc.get(0) instanceof CompactJSONObject);
+        assertEquals("Delores", doc.get(1).get("name", "first"));
+        assertEquals("fred", doc.get(1).opt("missing").orElse("fred"));
+
+        JSONObject small = parser.parse("{\"b\":1,\"a\":\"x\",\"c\":null}");
+        assertEquals("{\"b\":1,\"a\":\"x\",\"c\":null}", small.toString());
+        assertTrue(small.containsKey("c"));
+        assertEquals(Long.valueOf(1), small.remove("b"));
+        small.entrySet().iterator().next().setValue("y");
+        assertEquals("y", small.get("a"));
+        for (int i = 0; i < 20; i++) {
+            small.put("k" + i, i);
+        }
+        assertEquals(22, small.size());
+        assertEquals(19, (int) small.get("k19"));
+        JSONObject copy = new JSONObject();
+        copy.putAll(small);
+        assertEquals(copy, small);
+        assertEquals(small, copy);
+        assertEquals(small, small.clone());
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws IOException {
+        JSONParser parser = new JSONParser().primitiveArrays(true);
+        JSONObject doc = parser.parse("{\"l\":[1,-2,3],\"d\":[1.5,2.5],\"m\":[1,2.5,\"x\"],\"e\":[],\"n\":[[1,2],[3.0]]}");
+        assertEquals(JSON.from("{\"l\":[1,-2,3],\"d\":[1.5,2.5],\"m\":[1,2.5,\"x\"],\"e\":[],\"n\":[[1,2],[3.0]]}"), doc);
+
+        LongJSONArray longs = doc.get("l");
+        assertEquals(-2L, longs.getLong(1));
+        assertEquals(-2.0, longs.getDouble(1), 0);
+        assertEquals(Long.valueOf(3), longs.get(2));
+        assertArrayEquals(new long[]{1, -2, 3}, longs.toLongArray());
+        assertEquals("[1,-2,3]", longs.toString());
+
+        DoubleJSONArray doubles = doc.get("d");
+        assertEquals(2.5, doubles.getDouble(1), 0);
+        assertEquals("[\n  1.5,\n  2.5\n]", doubles.toString(2));
+
+        assertFalse(doc.get("m") instanceof PrimitiveJSONArray);
+        assertEquals(Arrays.asList(1L, 2.5, "x"), doc.get("m"));
+        assertTrue(((JSONArray<?>) doc.get("n")).get(0) instanceof LongJSONArray);
+        assertTrue(((JSONArray<?>) doc.get("n")).get(1) instanceof DoubleJSONArray);
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testPrimitiveArrayList() {
+        LongJSONArray longs = new LongJSONArray(5, 1, 4);
+        longs.addLong(2);
+        longs.add(3L);
+        longs.sort(null);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), longs);
+        longs.removeIf(v -> v % 2 == 0);
+        assertEquals(Arrays.asList(1L, 3L, 5L), longs);
+        longs.subList(0, 1).clear();
+        assertEquals(Arrays.asList(3L, 5L), longs);
+        assertEquals(longs, longs.clone());
+
+        // Anything the long[] cannot hold moves the contents to boxed storage.
+        ((List) longs).add("x");
+        assertEquals(Arrays.asList(3L, 5L, "x"), longs);
+        assertEquals(5L, longs.getLong(1));
+
+        // The typed adders fail iterators fast like add() does.
+        LongJSONArray moreLongs = new LongJSONArray(1, 2);
+        DoubleJSONArray doubles = new DoubleJSONArray(1.5, 2.5);
+        for (Runnable change : new Runnable[]{() -> {
+            for (Object o : moreLongs) {
+                moreLongs.addLong(9);
+            }
+        }, () -> {
+            for (Object o : doubles) {
+                doubles.addDouble(9);
+            }
+        }, () -> moreLongs.spliterator().forEachRemaining(o -> moreLongs.addLong(9)),
+                () -> doubles.spliterator().forEachRemaining(o -> doubles.addDouble(9))}) {
+            try {
+                change.run();
+                fail("Should not get here!");
+            } catch (ConcurrentModificationException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testWriteTo() throws IOException {
+        JSONArray<?> doc = JSON.from(new FileReader("samples/test-05.json"));
+        StringWriter compact = new StringWriter();
+        doc.writeTo(compact);
+        assertEquals(doc.toString(), compact.toString());
+        assertEquals(doc, JSON.from(compact.toString()));
+
+        ByteArrayOutputStream indented = new ByteArrayOutputStream();
+        doc.writeTo(indented, 3);
+        assertEquals(doc.toString(3), indented.toString(StandardCharsets.UTF_8));
+
+        JSONObject obj = JSON.from("{\"a\":{\"b\":[1,{\"c\":\"Horníková\"},[]],\"d\":{}}}");
+        StringBuilder sb = new StringBuilder();
+        obj.writeTo(sb, 1);
+        assertEquals(obj.toString(1), sb.toString());
+        assertEquals("{\"a\":{\"b\":[1,{\"c\":\"Horníková\"},[]],\"d\":{}}}", obj.toString());
+    }
+
+    @Test
+    public void testWriteDeep() throws IOException {
+        String deep = "[".repeat(500) + "1" + "]".repeat(500);
+        JSONArray<?> doc = JSON.from(deep);
+        assertEquals(deep, doc.toString());
+    }
+
+    @Test
+    public void testEscapedKeys() {
+        JSONObject obj = new JSONObject();
+        obj.put("say \"hi\"", "tab\there");
+        obj.put("ctl\u0001", "\u0085");
+        JSONObject nested = new JSONObject();
+        nested.put("q\"", null);
+        obj.put("n", nested);
+        String text = obj.toString();
+        assertTrue(text.contains("\"say \\\"hi\\\"\":\"tab\\there\""));
+        assertTrue(text.contains("\"ctl\\u0001\":\"\\u0085\""));
+        assertTrue(text.contains("\"n\":{\"q\\\"\":null}"));
+        assertTrue(obj.toString(2).contains("    \"q\\\"\":null\n"));
+    }
+
+    @Test
+    public void testEscape() {
+        String clean = "nothing to see here";
+        assertSame(clean, JSON.escape(clean));
+        assertEquals("a\\\"b\\\\c\\nd\\u0001e\\u0085", JSON.escape("a\"b\\c\nd\u0001e\u0085"));
+        assertEquals("Horn\\u00edkov\\u00e1", JSON.escape("Horníková", true));
+        assertEquals("Horníková", JSON.escape("Horníková"));
+    }
+
+    @Test
+    public void testUnescape() throws IOException {
+        String text = "{\"k\\\"ey\":\"q\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\\ud83d\\ude00\"}";
+        String expected = "q\"\\/\b\f\n\r\té\ud83d\ude00";
+        JSONObject doc = JSON.from(text);
+        assertEquals(expected, doc.get("k\"ey"));
+        assertEquals(doc, JSON.from(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(doc, new JSONParser(new JSONKeyCache(16)).parse(text.getBytes(StandardCharsets.UTF_8)));
+        // Round trip.
+        assertEquals(doc, JSON.from(doc.toString()));
+        assertEquals(doc, JSON.from(doc.toString(2)));
+    }
+
+    @Test
+    public void testInvalidEscape() {
+        for (String text : new String[]{"[\"\\x\"]", "[\"\\u12G4\"]", "[\"\\"}) {
+            try {
+                JSON.from(text);
+                fail("Should not get here!");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void streamTest07() throws IOException {
+        // Brackets inside strings must not confuse the framing.
+        String ndjson = "{\"a\":\"}{\"}\n[1,\"]\"]\n{\"b\":\"\\\"}\"}\n";
+        JSONStream i = JSON.objectsFrom(new StringReader(ndjson));
+        assertTrue(i.hasNext());
+        assertTrue(i.hasNext());
+        assertEquals("}{", i.next().get("a"));
+        JSONArray<?> array = i.nextDocument();
+        assertEquals(Arrays.asList(1L, "]"), array);
+        assertEquals("\"}", i.next().get("b"));
+        assertFalse(i.hasNext());
+        assertNull(i.next());
+    }
+
+    @Test
+    public void streamTest08() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int n = 0; n < 5000; n++) {
+            ndjson.append("{\"n\":").append(n).append(",\"s\":\"").append("x".repeat(n % 50)).append("\"}\n");
+        }
+        try (JSONStream i = JSON.objectsFrom(new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(5000, i.stream().mapToLong(o -> o.get("n")).distinct().count());
+        }
+        long sum = 0;
+        for (JSONObject o : JSON.objectsFrom(new StringReader(ndjson.toString()))) {
+            sum += (long) o.get("n");
+        }
+        assertEquals(4999L * 5000 / 2, sum);
+    }
+
+    @Test
+    public void streamTest09() throws IOException {
+        JSONStream i = JSON.objectsFrom(new StringReader("[1]"));
+        try {
+            i.next();
+            fail("Should not get here!");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals(Arrays.asList(1L), i.nextDocument());
+        assertNull(i.next());
+    }
+
+    @Test
+    public void streamTest10() throws IOException {
+        // Mixed roots: an array stays put for nextDocument() and documents().
+        String ndjson = "{\"a\":1}\n[1,2]\n{\"a\":3}\n";
+        JSONStream i = JSON.objectsFrom(new StringReader(ndjson));
+        assertEquals(1L, (long) i.next().get("a"));
+        try {
+            i.next();
+            fail("Should not get here!");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertTrue(i.hasNext());
+        assertEquals(Arrays.asList(1L, 2L), i.nextDocument());
+        assertEquals(3L, (long) i.next().get("a"));
+        assertFalse(i.hasNext());
+
+        Iterator<JSONObject> objects = JSON.objectsFrom(new StringReader(ndjson)).iterator();
+        assertEquals(1L, (long) objects.next().get("a"));
+        try {
+            objects.next();
+            fail("Should not get here!");
+        } catch (UncheckedIOException ex) {
+            // expected
+        }
+
+        try (Stream<Object> docs = JSON.objectsFrom(new StringReader(ndjson)).documents()) {
+            List<Object> all = docs.collect(Collectors.toList());
+            assertEquals(3, all.size());
+            assertEquals(JSON.from("{\"a\":1}"), all.get(0));
+            assertEquals(Arrays.asList(1L, 2L), all.get(1));
+            assertEquals(JSON.from("{\"a\":3}"), all.get(2));
+        }
+    }
+
+    @Test
+    public void testIngest() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int n = 0; n < 20000; n++) {
+            ndjson.append("{\"n\":").append(n).append(",\"s\":\"").append("y".repeat(n % 300)).append("\"}\n");
+        }
+        byte[] bytes = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<Long> seen = new ArrayList<>();
+        long count = new JSONIngest().chunkSize(1000).maxChunksInFlight(3)
+                .forEach(new ByteArrayInputStream(bytes), o -> seen.add(o.get("n")));
+        assertEquals(20000, count);
+        for (int n = 0; n < seen.size(); n++) {
+            assertEquals(n, (long) seen.get(n));
+        }
+
+        Set<Long> unordered = new HashSet<>();
+        new JSONIngest(new JSONParser().compactObjects(true), ForkJoinPool.commonPool()).ordered(false).chunkSize(4096)
+                .forEach(new ByteArrayInputStream(bytes), o -> unordered.add(o.get("n")));
+        assertEquals(20000, unordered.size());
+    }
+
+    @Test
+    public void testIngestError() {
+        byte[] bytes = "{\"a\":1}\n{\"a\":}\n".getBytes(StandardCharsets.UTF_8);
+        try {
+            new JSONIngest().chunkSize(4).forEach(new ByteArrayInputStream(bytes), o -> {
+            });
+            fail("Should not get here!");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParallelArray() throws IOException {
+        StringBuilder sb = new StringBuilder(" [");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"n\":").append(i)
+                    .append(",\"s\":\"a,]\\\"[\",\"l\":[").append(i).append(",{}]}");
+        }
+        sb.append(",7,\"x\",null] ");
+        ByteBuffer data = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        JSONArray<Object> expected = JSON.from(sb.toString());
+        JSONArray<Object> array = new JSONIngest().chunkSize(64).parseArray(data);
+        assertEquals(expected, array);
+        assertEquals("a,]\"[", ((JSONObject) array.get(999)).get("s"));
+
+        Set<Object> seen = new HashSet<>();
+        long count = new JSONIngest().chunkSize(100).ordered(false).forEachElement(data, seen::add);
+        assertEquals(1003, count);
+        assertEquals(new HashSet<>(expected), seen);
+
+        assertEquals(0, new JSONIngest().parseArray(ByteBuffer.wrap("[ ]".getBytes(StandardCharsets.UTF_8))).size());
+    }
+
+    @Test
+    public void testParallelArrayError() {
+        for (String bad : new String[]{"{\"a\":1}", "[1,2", "[1,{\"a\":}]", "[1] 2"}) {
+            try {
+                new JSONIngest().chunkSize(1).parseArray(ByteBuffer.wrap(bad.getBytes(StandardCharsets.UTF_8)));
+                fail("Should not get here! " + bad);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testStructuralIndex() {
+        Random random = new Random(14);
+        byte[] alphabet = "{}[],:\"\\ a1é".getBytes(StandardCharsets.UTF_8);
+        for (int round = 0; round < 200; round++) {
+            byte[] bytes = new byte[random.nextInt(3 * StructuralIndex.BLOCK_SIZE / (round % 50 + 1))];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+
+            List<Integer> expected = new ArrayList<>();
+            boolean inString = false;
+            for (int i = 0; i < bytes.length; i++) {
+                byte b = bytes[i];
+                if (inString) {
+                    if (b == '\\') {
+                        i++;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                    expected.add(i);
+                } else if ("{}[],:".indexOf(b) >= 0) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            StructuralIndex index = new StructuralIndex(data, 0, bytes.length);
+            for (int i; (i = index.next()) >= 0;) {
+                actual.add(i);
+            }
+            assertEquals(expected, actual);
+
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int found = from;
+            while (found < bytes.length && bytes[found] != '"' && bytes[found] != '\\') {
+                found++;
+            }
+            assertEquals(found, StructuralIndex.quoteOrBackslash(data, from, bytes.length));
+            assertEquals(found, StructuralIndex.quoteOrBackslash(data.duplicate().order(ByteOrder.LITTLE_ENDIAN), from, bytes.length));
+        }
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        String doc = "{\"id\": 12, \"name\": \"a\\\"b\", \"skip\": {\"x\": [1, {\"y\": []}]},"
+                + " \"pi\": 3.5, \"ok\": true, \"no\": null, \"list\": [1, 2.5, \"s\"]}";
+        for (JSONReader r : new JSONReader[]{JSON.reader(doc), JSON.reader(ByteBuffer.wrap(doc.getBytes(StandardCharsets.UTF_8)))}) {
+            assertEquals(JSONReader.Token.START_OBJECT, r.nextToken());
+            assertEquals(0, r.depth());
+            assertEquals(JSONReader.Token.KEY, r.nextToken());
+            assertEquals("id", r.getString());
+            assertEquals(JSONReader.Token.NUMBER, r.nextToken());
+            assertTrue(r.isLong());
+            assertEquals(12, r.getLong());
+            assertEquals(1, r.depth());
+            r.nextToken();
+            r.nextToken();
+            assertEquals("a\"b", r.getString());
+            assertEquals(JSONReader.Token.KEY, r.nextToken());
+            r.skipValue();
+            assertEquals(JSONReader.Token.END_OBJECT, r.currentToken());
+            assertEquals(JSONReader.Token.KEY, r.nextToken());
+            r.nextToken();
+            assertEquals(3.5, r.getDouble(), 0);
+            assertEquals(3L, r.getLong());
+            r.nextToken();
+            assertTrue(r.nextToken() == JSONReader.Token.TRUE && r.getBoolean());
+            r.nextToken();
+            assertEquals(JSONReader.Token.NULL, r.nextToken());
+            assertEquals(JSONReader.Token.KEY, r.nextToken());
+            assertEquals(JSON.from("[1, 2.5, \"s\"]"), r.readValue());
+            assertEquals(JSONReader.Token.END_OBJECT, r.nextToken());
+            assertEquals(JSONReader.Token.END_DOCUMENT, r.nextToken());
+            try {
+                r.getString();
+                fail("Should not get here!");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testReaderInvalid() {
+        for (String bad : new String[]{"{\"a\" 1}", "{\"a\":1 \"b\":2}", "[1,]", "{\"a\":1,}", "{\"a\":}", "[1}", "[1, 2", "{1:2}", "[,1]"}) {
+            try (JSONReader r = JSON.reader(bad)) {
+                while (r.nextToken() != JSONReader.Token.END_DOCUMENT) {
+                }
+                fail("Should not get here! " + bad);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testHandler() throws IOException {
+        String doc = "{\"a\": [1, 2.5, \"s\", true, null, 123456789012345678901234567890], \"b\": {}} [7]";
+        StringBuilder events = new StringBuilder();
+        JSON.parse(ByteBuffer.wrap(doc.getBytes(StandardCharsets.UTF_8)), new JSONHandler() {
+            @Override
+            public void startObject() {
+                events.append('{');
+            }
+
+            @Override
+            public void key(String key) {
+                events.append(key).append(':');
+            }
+
+            @Override
+            public void endObject() {
+                events.append('}');
+            }
+
+            @Override
+            public void startArray() {
+                events.append('[');
+            }
+
+            @Override
+            public void endArray() {
+                events.append(']');
+            }
+
+            @Override
+            public void value(String value) {
+                events.append("S").append(value).append(' ');
+            }
+
+            @Override
+            public void value(long value) {
+                events.append("L").append(value).append(' ');
+            }
+
+            @Override
+            public void value(double value) {
+                events.append("D").append(value).append(' ');
+            }
+
+            @Override
+            public void value(Number value) {
+                events.append("N").append(value.getClass().getSimpleName()).append(' ');
+            }
+
+            @Override
+            public void value(boolean value) {
+                events.append("B").append(value).append(' ');
+            }
+
+            @Override
+            public void nullValue() {
+                events.append("null ");
+            }
+        });
+        assertEquals("{a:[L1 D2.5 Ss Btrue null NBigInteger ]b:{}}[L7 ]", events.toString());
+    }
+
+    @Test
+    public void testHandlerLargeFile() throws IOException {
+        Path file = Files.createTempFile("handler", ".json");
+        try {
+            try (Writer out = Files.newBufferedWriter(file)) {
+                out.write('[');
+                for (int i = 0; i < 100_000; i++) {
+                    out.write((i == 0 ? "" : ",") + "{\"v\":" + i + ",\"w\":0.5}");
+                }
+                out.write(']');
+            }
+            long[] sum = new long[1];
+            double[] halves = new double[1];
+            JSON.parse(file, new JSONHandler() {
+                @Override
+                public void value(long value) {
+                    sum[0] += value;
+                }
+
+                @Override
+                public void value(double value) {
+                    halves[0] += value;
+                }
+            });
+            assertEquals(99_999L * 100_000 / 2, sum[0]);
+            assertEquals(50_000, halves[0], 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSelect() throws IOException {
+        String doc = "{\"user\": {\"id\": 7, \"name\": \"x}]\\\"\", \"tags\": [\"a\", {\"b\": [1, 2]}]},"
+                + " \"junk\": {\"deep\": [[{}], \"[\", 1e5, true]}, \"n\": null,"
+                + " \"items\": [{\"price\": 1.5, \"sku\": \"a\"}, {\"sku\": \"b\"}, 4, {\"price\": 3, \"qty\": 2}]}";
+        JSONParser parser = new JSONParser().select("user.id", "items[*].price", "items[3].qty", "n");
+        JSONObject expected = JSON.from("{\"user\": {\"id\": 7}, \"n\": null,"
+                + " \"items\": [{\"price\": 1.5}, {}, {\"price\": 3, \"qty\": 2}]}");
+        assertEquals(expected, parser.parse(doc));
+        assertEquals(expected, parser.parse(doc.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, parser.parse(new ByteArrayInputStream(doc.getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(JSON.from("{\"user\": {\"tags\": [\"a\", {\"b\": [1, 2]}]}}"),
+                new JSONParser().select("user.tags").parse(doc));
+        assertEquals(JSON.from("[{\"a\": 2}]"), new JSONParser().select("[1].a").parse("[{\"a\": 1}, {\"a\": 2, \"b\": 3}, {}]"));
+
+        StringBuilder keys = new StringBuilder();
+        parser.parse(doc, new JSONHandler() {
+            @Override
+            public void key(String key) {
+                keys.append(key).append(' ');
+            }
+        });
+        assertEquals("user id n items price price qty ", keys.toString());
+
+        try {
+            new JSONParser().select("a..b");
+            fail("Should not get here!");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            parser.parse("{\"junk\": [1, 2}");
+            fail("Should not get here!");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLazy() throws IOException {
+        String doc = "{ \"h\" : \"x\\u0041\" , \"body\": {\"a\": [1,  2.50, {\"b\": \"\\\"}\"}], \"c\": null}, \"n\": 12 }";
+        JSONParser parser = new JSONParser().lazy(true);
+        for (JSONObject o : new JSONObject[]{parser.parse(doc), parser.parse(doc.getBytes(StandardCharsets.UTF_8)),
+            parser.parse(new StringReader(doc))}) {
+            assertTrue(o instanceof LazyJSONObject);
+            assertEquals(doc, o.toString());
+            assertEquals("xA", o.get("h"));
+            assertEquals(12L, (long) o.get("n"));
+            JSONObject body = o.get("body");
+            assertTrue(body instanceof LazyJSONObject);
+            assertEquals(JSON.from(doc), o);
+            // Lexed, but unchanged: still copied verbatim.
+            assertEquals(doc, o.toString());
+
+            JSONArray<Object> a = body.get("a");
+            ((JSONObject) a.get(2)).put("b", "y");
+            assertEquals(JSON.from("{\"h\":\"xA\",\"body\":{\"a\":[1,2.5,{\"b\":\"y\"}],\"c\":null},\"n\":12}"), JSON.from(o.toString()));
+            assertEquals(JSON.from(o.toString(2)), o);
+        }
+
+        JSONObject changed = parser.parse(doc);
+        changed.put("n", 13);
+        assertTrue(changed.toString().contains("{\"a\": [1,  2.50, {\"b\": \"\\\"}\"}], \"c\": null}"));
+
+        JSONObject o = parser.parse(doc);
+        Iterator<Object> values = o.values().iterator();
+        values.next();
+        values.remove();
+        assertEquals(2, o.size());
+        assertFalse(o.toString().equals(doc));
+
+        JSONArray<Object> array = parser.parse(" [ {\"a\" : 1} , [ ] ] ");
+        assertTrue(array instanceof LazyJSONArray);
+        assertEquals("[ {\"a\" : 1} , [ ] ]", array.toString());
+        assertEquals(2, array.size());
+        array.subList(0, 1).clear();
+        assertEquals("[[ ]]", array.toString());
+
+        // Malformed documents fail to parse, as they would eagerly, even
+        // where the brackets balance; nothing invalid is ever copied out.
+        for (String bad : new String[]{"{\"a\":{\"b\":[1 2 ~]},\"c\":1}", "{\"a\": {\"b\": 1, \"c\" 2}}",
+            "[1, [2, :]]", "[1, [2, tru]]", "{\"a\":[1}}", "[{\"a\":\"\\q\"}]", "[[1.2.3]]", "[{\"a\":1,,\"b\":2}]",
+            "[[1], {1:2}]", "[{\"a\":1,}]", "[[\"\\u00g0\"]]"}) {
+            for (JSONParser p : new JSONParser[]{parser, new JSONParser()}) {
+                try {
+                    p.parse(bad);
+                    fail("Should not get here!");
+                } catch (IOException ex) {
+                    // expected
+                }
+                try {
+                    p.parse(bad.getBytes(StandardCharsets.UTF_8));
+                    fail("Should not get here!");
+                } catch (IOException ex) {
+                    // expected
+                }
+            }
+        }
+        JSONArray<Object> lenient = parser.parse("[[1 2], {\"a\":1 \"b\":2}]");
+        assertEquals(JSON.from("[[1, 2], {\"a\":1, \"b\":2}]"), lenient);
+        assertEquals(lenient, JSON.from(lenient.toString()));
+    }
+
+    @Test
+    public void testRetainSource() throws IOException {
+        String doc = "{\"id\" : 1, \"keep\": {\"s\": \"\\u00e9t\u00e9 \\/\", \"n\": [2.50, 1E2]},"
+                + " \"edit\": {\"x\": 1, \"y\": [ true ]}}";
+        JSONParser parser = new JSONParser().retainSource(true);
+        for (JSONObject o : new JSONObject[]{parser.parse(doc), parser.parse(doc.getBytes(StandardCharsets.UTF_8))}) {
+            assertEquals(JSON.from(doc), o);
+            assertEquals(doc, o.toString());
+
+            ((JSONObject) o.get("edit")).put("x", 2);
+            String out = o.toString();
+            assertTrue(out.contains("\"keep\":{\"s\": \"\\u00e9t\u00e9 \\/\", \"n\": [2.50, 1E2]}"));
+            assertTrue(out.contains("\"y\":[ true ]"));
+            assertEquals(2L, (long) ((JSONObject) JSON.from(out)).get("edit", "x"));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            o.writeTo(bytes);
+            assertEquals(out, bytes.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testWriteToStreamEncoding() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 9000; i++) {
+            sb.append(i % 3 == 0 ? "\uD83D\uDE00" : i % 3 == 1 ? "\u00e9" : "a\u4e2d");
+        }
+        // Shift the text so a surrogate pair straddles the writer's buffer.
+        for (int shift = 0; shift < 5; shift++) {
+            JSONArray<Object> a = new JSONArray<>();
+            a.add("y".repeat(shift) + sb);
+            a.add("x");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            a.writeTo(bytes);
+            assertEquals(a.toString(), bytes.toString(StandardCharsets.UTF_8));
+            bytes.reset();
+            a.writeTo(bytes, 2);
+            assertEquals(a.toString(2), bytes.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testReusableParser() throws IOException {
+        ReusableJSONParser p = new JSONParser(new JSONKeyCache(64)).reusable();
+        try {
+            p.parse();
+            fail("Should not get here!");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        String big = "{\"s\": \"" + "x".repeat(100_000) + "\"}";
+        for (int round = 0; round < 3; round++) {
+            assertEquals(JSON.from("{\"a\": [1, \"b\"]}"), p.reset("{\"a\": [1, \"b\"]}").parse());
+            assertEquals(JSON.from(big), p.reset(big).parse());
+            try {
+                p.reset("{\"a\": [1,").parse();
+                fail("Should not get here!");
+            } catch (IOException ex) {
+                // expected
+            }
+            assertEquals(JSON.from("[true]"), p.reset(new StringReader("[true]")).parse());
+            p.reset(new ByteArrayInputStream("{\"x\": 1} [2]".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(JSON.from("{\"x\": 1}"), p.parse());
+            assertEquals(JSON.from("[2]"), p.parse());
+            assertNull(p.parse());
+            assertEquals(JSON.from("{}"), p.reset("{}".getBytes(StandardCharsets.UTF_8)).parse());
+        }
+
+        // Lazy trees keep their own copy of String input.
+        JSONParser lazy = new JSONParser().lazy(true);
+        JSONObject first = lazy.parse("{\"a\": {\"b\": 1}}");
+        JSONObject second = lazy.parse("{\"a\": {\"c\": 2}}");
+        assertEquals(1L, (long) first.get("a", "b"));
+        assertEquals(2L, (long) second.get("a", "c"));
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        for (String name : new String[]{"sample", "test-01", "test-02", "test-03", "test-04", "test-05"}) {
+            Object doc = JSON.from(Paths.get("samples/" + name + ".json"));
+            byte[] bytes = JSONBinary.encode(doc);
+            assertEquals(name, doc, JSONBinary.decode(bytes));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+            direct.position(3);
+            direct.put(bytes).position(3);
+            assertEquals(name, doc, JSONBinary.decode(direct));
+            assertEquals(3, direct.position());
+        }
+
+        JSONObject doc = new JSONParser().primitiveArrays(true).parse(
+                "{\"l\": [1, -2, 9223372036854775807], \"d\": [0.5, -0.0], \"n\": null, \"t\": true,"
+                + " \"o\": {\"l\": {}, \"e\": [], \"s\": \"caf\u00e9 \ud83d\ude00\"},"
+                + " \"a\": [-1, 2.5, false, [\"x\"], {\"l\": 0}]}");
+        doc.put("i", Integer.MIN_VALUE);
+        doc.put("f", Float.NaN);
+        doc.put("bi", new BigInteger("-123456789012345678901234567890"));
+        doc.put("bd", new BigDecimal("1234567890.0987654321e-40"));
+        doc.put("nan", Double.NaN);
+        byte[] bytes = JSONBinary.encode(doc);
+        JSONObject copy = JSONBinary.decode(bytes);
+        assertEquals(doc, copy);
+        assertTrue(copy.get("l") instanceof LongJSONArray);
+        assertTrue(copy.get("d") instanceof DoubleJSONArray);
+        assertTrue(copy.get("i") instanceof Integer);
+        assertTrue(copy.get("f") instanceof Float);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(((DoubleJSONArray) copy.get("d")).getDouble(1)));
+        assertSame(((JSONObject) copy.get("o")).keySet().stream().filter("l"::equals).findAny().get(),
+                copy.keySet().stream().filter("l"::equals).findAny().get());
+
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        assertEquals("caf\u00e9 \ud83d\ude00", JSONBinary.get(b, "o", "s"));
+        assertEquals(2.5, JSONBinary.get(b, "a", 1));
+        assertEquals(0L, JSONBinary.get(b, "a", 4, "l"));
+        assertEquals(Long.MAX_VALUE, JSONBinary.get(b, "l", 2));
+        assertEquals(0.5, JSONBinary.get(b, "d", 0));
+        assertEquals(JSON.from("[\"x\"]"), JSONBinary.get(b, "a", 3));
+        assertEquals(doc, JSONBinary.get(b));
+        assertNull(JSONBinary.get(b, "missing"));
+        assertNull(JSONBinary.get(b, "a", 5));
+        assertNull(JSONBinary.get(b, "a", "x"));
+        assertNull(JSONBinary.get(b, "l", 0, 0));
+        assertNull(JSONBinary.get(b, "n", "x"));
+
+        // Containers too big for one byte offsets.
+        JSONArray<Object> wide = new JSONArray<>();
+        for (int i = 0; i < 70_000; i++) {
+            wide.add(i % 3 == 0 ? "v" + i : (long) i);
+        }
+        JSONObject big = new JSONObject();
+        big.put("wide", wide);
+        big.put("z", "last");
+        bytes = JSONBinary.encode(big);
+        assertEquals(big, JSONBinary.decode(bytes));
+        assertEquals("v69999", JSONBinary.get(ByteBuffer.wrap(bytes), "wide", 69999));
+        assertEquals("last", JSONBinary.get(ByteBuffer.wrap(bytes), "z"));
+
+        // Keys are found by binary search over a sorted dictionary.
+        JSONObject keyed = new JSONObject();
+        for (int i = 0; i < 3000; i++) {
+            keyed.put("k" + i, (long) i);
+        }
+        keyed.put("\u00e9", "e");
+        keyed.put("\uffff", "max");
+        keyed.put("\ud83d\ude00", "smile");
+        keyed.put("", "empty");
+        ByteBuffer k = ByteBuffer.wrap(JSONBinary.encode(keyed));
+        for (Map.Entry<String, Object> e : keyed.entrySet()) {
+            assertEquals(e.getValue(), JSONBinary.get(k, e.getKey()));
+        }
+        assertNull(JSONBinary.get(k, "k3000"));
+        assertNull(JSONBinary.get(k, "a"));
+        assertNull(JSONBinary.get(k, "\ud83d\ude01"));
+        assertEquals(keyed, JSONBinary.decode(k));
+
+        for (byte[] bad : new byte[][]{{}, "{}".getBytes(StandardCharsets.UTF_8),
+                Arrays.copyOf(bytes, bytes.length - 3), Arrays.copyOf(bytes, 20)}) {
+            try {
+                JSONBinary.decode(bad);
+                fail("Should not get here!");
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        try {
+            JSONBinary.encode(new JSONArray<>(Arrays.asList(new Object())));
+            fail("Should not get here!");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStore() throws IOException, InterruptedException {
+        JSONStore store = new JSONStore(4096);
+        List<Object> docs = new ArrayList<>();
+        List<Long> handles = new ArrayList<>();
+        for (String name : new String[]{"sample", "test-01", "test-02", "test-03", "test-04", "test-05"}) {
+            byte[] text = Files.readAllBytes(Paths.get("samples/" + name + ".json"));
+            docs.add(JSON.from(text));
+            handles.add(store.parse(text));
+        }
+        JSONObject small = JSON.from("{\"a\": {\"b\": [1, {\"c\": null}, \"d\"]}, \"e\": [1, 2], \"f\": 1.5}");
+        docs.add(small);
+        handles.add(store.add(small));
+        assertEquals(docs.size(), store.size());
+        assertTrue(store.capacity() > 4096);
+
+        for (int i = 0; i < docs.size(); i++) {
+            Object view = store.get(handles.get(i));
+            assertEquals(docs.get(i), view);
+            assertEquals(view, docs.get(i));
+            assertEquals(docs.get(i).hashCode(), view.hashCode());
+            assertEquals(JSON.from(docs.get(i).toString()), JSON.from(view.toString()));
+        }
+
+        JSONObject view = store.get(handles.get(handles.size() - 1));
+        assertTrue(view instanceof StoredJSONObject);
+        assertEquals(3, view.size());
+        assertTrue(view.containsKey("a"));
+        assertFalse(view.containsKey("z"));
+        assertNull(view.get("z"));
+        assertEquals("x", view.getOrDefault("z", "x"));
+        assertEquals(1.5, view.get("f"));
+        JSONArray<Object> b = view.get("a", "b");
+        assertTrue(b instanceof StoredJSONArray);
+        assertEquals(3, b.size());
+        assertEquals(1L, b.getLong(0));
+        assertEquals("d", b.get(2));
+        assertTrue(((JSONObject) b.get(1)).containsKey("c"));
+        assertNull(((JSONObject) b.get(1)).get("c"));
+        try {
+            b.get(3);
+            fail("Should not get here!");
+        } catch (IndexOutOfBoundsException ex) {
+            // expected
+        }
+        assertEquals(Arrays.asList(1L, 2L), view.get("e"));
+        assertEquals(small.keySet(), view.keySet());
+
+        for (Runnable change : new Runnable[]{() -> view.put("g", 1), () -> view.remove("a"),
+                () -> view.entrySet().clear(), () -> b.add(1), () -> b.set(0, 2),
+                () -> b.subList(0, 1).clear(), () -> {
+                    Iterator<Object> it = b.iterator();
+                    it.next();
+                    it.remove();
+                }}) {
+            try {
+                change.run();
+                fail("Should not get here!");
+            } catch (UnsupportedOperationException ex) {
+                // expected
+            }
+        }
+        assertEquals(small, view);
+
+        // A document bigger than a chunk gets one of its own.
+        JSONArray<Object> big = new JSONArray<>();
+        for (int i = 0; i < 2000; i++) {
+            big.add("element " + i);
+        }
+        long handle = store.add(big);
+        assertEquals("element 1999", ((JSONArray<?>) store.get(handle)).get(1999));
+        try {
+            store.get(handle + 1_000_000);
+            fail("Should not get here!");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        Object copy = view.clone();
+        assertFalse(copy instanceof StoredJSONObject);
+        store.close();
+        store.close();
+        assertEquals(small, copy);
+        assertEquals(0, store.capacity());
+        for (Runnable use : new Runnable[]{() -> view.get("f"), () -> b.get(0), () -> view.size(),
+                () -> store.get(handles.get(0)), () -> store.add(small)}) {
+            try {
+                use.run();
+                fail("Should not get here!");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+
+        // Closing under a running reader waits for it, then fails its next read.
+        JSONStore shared = new JSONStore(4096);
+        JSONObject live = shared.get(shared.add(small));
+        Throwable[] ended = new Throwable[1];
+        AtomicReference<Object> started = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    started.set(((JSONArray<?>) live.get("a", "b")).get(2));
+                    assertEquals(small, shared.get(shared.add(small)));
+                }
+            } catch (Throwable ex) {
+                ended[0] = ex;
+            }
+        });
+        reader.start();
+        while (started.get() == null && reader.isAlive()) {
+            Thread.yield();
+        }
+        shared.close();
+        reader.join();
+        assertTrue(String.valueOf(ended[0]), ended[0] instanceof IllegalStateException);
+        assertEquals(0, shared.capacity());
+    }
+
+    record Inner(String name, JSONObject seen) {
+
+        Inner {
+            // User code that parses while a parse is under way.
+            try {
+                seen = JSON.from("{\"name\": \"" + name + "\"}");
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    record Outer(Inner inner, long after) {
+    }
+
+    @Test
+    public void testPooledParsers() throws Exception {
+        Outer o = JSON.from("{\"inner\": {\"name\": \"a\"}, \"after\": 2}", Outer.class);
+        assertEquals("a", o.inner().seen().get("name"));
+        assertEquals(2, o.after());
+
+        // Pooled parsers let go of their input once a parse is done.
+        byte[] big = ("[\"" + "x".repeat(1 << 20) + "\"]").getBytes(StandardCharsets.UTF_8);
+        assertEquals(1, ((JSONArray<?>) JSON.from(big)).size());
+        JSONParser retaining = new JSONParser().retainSource(true);
+        byte[] retained = big.clone();
+        assertEquals(1, ((JSONArray<?>) retaining.parse(retained)).size());
+        java.lang.ref.WeakReference<byte[]> first = new java.lang.ref.WeakReference<>(big);
+        java.lang.ref.WeakReference<byte[]> second = new java.lang.ref.WeakReference<>(retained);
+        big = retained = null;
+        for (int i = 0; i < 20 && (first.get() != null || second.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(first.get());
+        assertNull(second.get());
+
+        ReusableJSONParser p = new JSONParser().reusable();
+        assertEquals(JSON.from("[1]"), p.reset("[1]").parse());
+        p.release();
+        try {
+            p.parse();
+            fail("Should not get here!");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    enum Side {
+        BUY, SELL
+    }
+
+    record Fill(long quantity, double price) {
+    }
+
+    record Order(String id, Side side, int count, boolean open, char flag, float ratio,
+            List<Fill> fills, Map<String, Long> limits, int[] slots, Fill best, Object extra) {
+    }
+
+    static class Account {
+
+        String owner;
+        long balance;
+        short branch;
+        transient int cached = 7;
+        List<Account> children;
+        BigDecimal exact;
+    }
+
+    static class Holder {
+
+        final Account account;
+
+        Holder(Account account) {
+            this.account = account;
+        }
+    }
+
+    @Test
+    public void testBinding() throws IOException {
+        String text = "{\"id\": \"o-1\", \"side\": \"SELL\", \"count\": 3, \"open\": true, \"flag\": \"x\","
+                + " \"ratio\": 0.5, \"unknown\": {\"a\": [1, {}]}, \"fills\": [{\"quantity\": 10, \"price\": 1.25}],"
+                + " \"limits\": {\"day\": 100, \"week\": null}, \"slots\": [1, 2, 3], \"extra\": {\"k\": [true]}}";
+        Order o = JSON.from(text, Order.class);
+        assertEquals("o-1", o.id());
+        assertEquals(Side.SELL, o.side());
+        assertEquals(3, o.count());
+        assertTrue(o.open());
+        assertEquals('x', o.flag());
+        assertEquals(0.5f, o.ratio(), 0);
+        assertEquals(List.of(new Fill(10, 1.25)), o.fills());
+        assertEquals(100L, (long) o.limits().get("day"));
+        assertTrue(o.limits().containsKey("week"));
+        assertArrayEquals(new int[]{1, 2, 3}, o.slots());
+        assertNull(o.best());
+        assertEquals(JSON.from("{\"k\": [true]}"), o.extra());
+
+        // Serialization follows the same plan, in declaration order.
+        String out = JSON.toJSON(o);
+        assertEquals("{\"id\":\"o-1\",\"side\":\"SELL\",\"count\":3,\"open\":true,\"flag\":\"x\",\"ratio\":0.5,"
+                + "\"fills\":[{\"quantity\":10,\"price\":1.25}],\"limits\":{\"day\":100,\"week\":null},"
+                + "\"slots\":[1,2,3],\"best\":null,\"extra\":{\"k\":[true]}}", out);
+        assertEquals(JSON.from(out), JSON.from(JSON.toJSON(o, 2)));
+        Order again = JSON.from(new ByteArrayInputStream(out.getBytes(StandardCharsets.UTF_8)), Order.class);
+        assertEquals(o.fills(), again.fills());
+        assertArrayEquals(o.slots(), again.slots());
+
+        // Classes bind through their fields, and may refer to themselves.
+        Account a = JSON.from("{\"owner\": \"k\", \"balance\": 12, \"branch\": 4, \"cached\": 1,"
+                + " \"exact\": 0.125, \"children\": [{\"owner\": \"c\"}]}", Account.class);
+        assertEquals("k", a.owner);
+        assertEquals(12, a.balance);
+        assertEquals(4, a.branch);
+        assertEquals(7, a.cached);
+        assertEquals(new BigDecimal("0.125"), a.exact);
+        assertEquals("c", a.children.get(0).owner);
+        assertNull(a.children.get(0).children);
+        assertEquals("{\"owner\":\"k\",\"balance\":12,\"branch\":4,\"children\":[{\"owner\":\"c\",\"balance\":0,"
+                + "\"branch\":0,\"children\":null,\"exact\":null}],\"exact\":0.125}", JSON.toJSON(a));
+
+        // Bound objects inside a tree are written through their plan too.
+        JSONObject tree = new JSONObject();
+        tree.put("fill", new Fill(1, 2));
+        assertEquals("{\"fill\":{\"quantity\":1,\"price\":2.0}}", tree.toString());
+
+        // Reading straight off a pull parser.
+        try (JSONReader r = JSON.reader("{\"fills\": [{\"quantity\": 1, \"price\": 3}, {\"quantity\": 2}], \"n\": 5}")) {
+            r.nextToken();
+            assertEquals("fills", r.nextToken() == JSONReader.Token.KEY ? r.getString() : null);
+            Fill[] fills = r.read(Fill[].class);
+            assertEquals(JSONReader.Token.END_ARRAY, r.currentToken());
+            assertArrayEquals(new Fill[]{new Fill(1, 3), new Fill(2, 0)}, fills);
+            r.nextToken();
+            assertEquals(5, (int) r.read(int.class));
+        }
+        assertNull(JSON.from("  ", Fill.class));
+
+        for (String bad : new String[]{"{\"count\": 3000000000}", "{\"count\": 1.5}", "{\"count\": \"3\"}",
+            "{\"side\": \"HOLD\"}", "{\"flag\": \"xy\"}", "{\"fills\": {}}", "[]", "{\"open\": null}"}) {
+            try {
+                JSON.from(bad, Order.class);
+                fail("Should not get here! " + bad);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        try {
+            JSON.from("{}", Holder.class);
+            fail("Should not get here!");
+        } catch (IllegalArgumentException ex) {
+            // expected: no no-argument constructor
+        }
+        try {
+            JSON.from("{}", Runnable.class);
+            fail("Should not get here!");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGeneratedCodec() throws Exception {
+        Path dir = Files.createTempDirectory("codec");
+        try {
+            Path src = Files.createDirectories(dir.resolve("gen"));
+            Files.writeString(src.resolve("Side.java"), "package gen; public enum Side { BUY, SELL }");
+            Files.writeString(src.resolve("Trade.java"), "package gen;\n"
+                    + "import info.thepratts.util.json.JSONType;\n"
+                    + "import java.util.List;\n"
+                    + "@JSONType public record Trade(String symbol, long quantity, double price, boolean open, char flag,\n"
+                    + "        Side side, List<Leg> legs, Trade parent) {\n"
+                    + "    @JSONType public static class Leg { int ratio; String name; transient int seen; }\n"
+                    + "}\n");
+            Files.writeString(src.resolve("Bad.java"), "package gen; @info.thepratts.util.json.JSONType class Bad { private int x; }");
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            String[] args = {"-d", dir.toString(), "-cp", System.getProperty("java.class.path") + File.pathSeparator + dir,
+                "-processor", JSONCodecProcessor.class.getName(), src.resolve("Side.java").toString(), src.resolve("Trade.java").toString()};
+            assertEquals(err.toString(), 0, ToolProvider.getSystemJavaCompiler().run(null, null, err, args));
+            args[args.length - 1] = src.resolve("Bad.java").toString();
+            assertTrue(ToolProvider.getSystemJavaCompiler().run(null, null, err, args) != 0);
+            assertTrue(err.toString().contains("must be visible"));
+
+            // Incremental builds keep the codecs of types not recompiled, and
+            // drop those of types no longer marked.
+            Path services = dir.resolve(JSONCodecProcessor.SERVICES);
+            Files.writeString(src.resolve("Quote.java"), "package gen; @info.thepratts.util.json.JSONType public record Quote(long bid) { }");
+            args[args.length - 1] = src.resolve("Quote.java").toString();
+            assertEquals(err.toString(), 0, ToolProvider.getSystemJavaCompiler().run(null, null, err, args));
+            assertEquals(List.of("gen.QuoteJSONCodec", "gen.TradeJSONCodec", "gen.Trade_LegJSONCodec"), Files.readAllLines(services));
+            Files.writeString(src.resolve("Quote.java"), "package gen; public record Quote(long bid) { }");
+            assertEquals(err.toString(), 0, ToolProvider.getSystemJavaCompiler().run(null, null, err, args));
+            assertEquals(List.of("gen.TradeJSONCodec", "gen.Trade_LegJSONCodec"), Files.readAllLines(services));
+
+            try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, getClass().getClassLoader())) {
+                Class<?> trade = loader.loadClass("gen.Trade");
+                assertTrue(Binding.of(trade) instanceof Binding.Generated);
+                assertTrue(Binding.of(loader.loadClass("gen.Trade$Leg")) instanceof Binding.Generated);
+
+                Object t = JSON.from("{\"symbol\": \"X\", \"quantity\": 5, \"price\": 1.5, \"open\": true, \"flag\": \"f\","
+                        + " \"side\": \"BUY\", \"skip\": [1, {\"a\": null}], \"legs\": [{\"ratio\": 2, \"name\": \"a\", \"seen\": 3}, null],"
+                        + " \"parent\": {\"symbol\": \"P\", \"flag\": \"g\"}}", trade);
+                String out = JSON.toJSON(t);
+                assertEquals("{\"symbol\":\"X\",\"quantity\":5,\"price\":1.5,\"open\":true,\"flag\":\"f\",\"side\":\"BUY\","
+                        + "\"legs\":[{\"ratio\":2,\"name\":\"a\"},null],\"parent\":{\"symbol\":\"P\",\"quantity\":0,\"price\":0.0,"
+                        + "\"open\":false,\"flag\":\"g\",\"side\":null,\"legs\":null,\"parent\":null}}", out);
+                assertEquals(out, JSON.toJSON(JSON.from(out, trade)));
+                assertEquals(JSON.from(out), JSON.from(JSON.toJSON(t, 2)));
+
+                // The same as the reflective plan, indented or not.
+                for (int indent : new int[]{-1, 2}) {
+                    StringBuilder sb = new StringBuilder();
+                    JSONWriter w = new JSONWriter(sb, indent);
+                    Binding.Bean.record(trade).write(w, t, 0);
+                    w.flush();
+                    assertEquals(sb.toString(), JSON.toJSON(t, indent));
+                }
+                try {
+                    JSON.from("{\"quantity\": \"5\"}", trade);
+                    fail("Should not get here!");
+                } catch (IOException ex) {
+                    assertTrue(ex.getMessage().contains("'quantity' of Trade"));
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
     private void append(FileReader fileReader, ByteArrayOutputStream out) throws IOException {
         int ch;
         while (-1 != (ch = fileReader.read())) {